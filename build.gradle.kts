@@ -1,5 +1,6 @@
 plugins {
     id("com.falsepattern.fpgradle-mc") version ("0.15.1")
+    id("me.champeau.jmh") version ("0.7.3")
 }
 
 group = "codechicken"
@@ -27,3 +28,35 @@ minecraft_fp {
         }
     }
 }
+
+// Headless microbenchmarks for the render pipeline, vector math, ray tracing and packets.
+// Run with ./gradlew jmh, results are written as JSON for regression tracking.
+sourceSets {
+    named("jmh") {
+        compileClasspath += sourceSets["main"].compileClasspath
+        runtimeClasspath += sourceSets["main"].runtimeClasspath
+    }
+    // Headless unit tests, with the same minecraft classes on the classpath as main.
+    named("test") {
+        compileClasspath += sourceSets["main"].compileClasspath
+        runtimeClasspath += sourceSets["main"].runtimeClasspath
+    }
+}
+
+dependencies {
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.10.2")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+jmh {
+    jmhVersion = "1.37"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+}
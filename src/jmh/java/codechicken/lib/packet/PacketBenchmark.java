@@ -0,0 +1,55 @@
+package codechicken.lib.packet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Write, serialise (compressing large payloads) and read back a PacketCustom
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacketBenchmark {
+
+    @Param({ "64", "40000" })
+    public int ints;
+
+    private int[] data;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(0);
+        data = new int[ints];
+        // low entropy so compression is worthwhile, as with most chunk data
+        for (int i = 0; i < ints; i++) data[i] = rand.nextInt(16);
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        PacketCustom packet = new PacketCustom("ccbench", 1);
+        packet.writeString("benchmark");
+        packet.writeCoord(100, 64, -200);
+        packet.writeVarInt(data.length);
+        for (int i = 0; i < data.length; i++) packet.writeInt(data[i]);
+
+        ByteBuf payload = packet.toPacket().payload();
+        PacketCustom in = new PacketCustom(payload);
+        in.readString();
+        in.readCoord();
+        int len = in.readVarInt();
+        int sum = 0;
+        for (int i = 0; i < len; i++) sum += in.readInt();
+        return sum;
+    }
+}
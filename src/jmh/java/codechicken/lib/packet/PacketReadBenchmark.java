@@ -0,0 +1,68 @@
+package codechicken.lib.packet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import codechicken.lib.vec.BlockCoord;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Read a packet of block updates (coord, block name, 16 bytes of data) with the allocating readers against the in
+ * place readers and the channel string table. Run with -prof gc to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PacketReadBenchmark {
+
+    private static final int UPDATES = 256;
+    private static final String[] names = { "minecraft:stone", "minecraft:dirt", "gregtech:gt.blockmachines",
+            "minecraft:redstone_wire" };
+
+    private byte[] payload;
+    private final BlockCoord coord = new BlockCoord();
+    private final byte[] data = new byte[16];
+
+    @Setup
+    public void setup() {
+        PacketCustom packet = new PacketCustom("ccbench", 1);
+        for (int i = 0; i < UPDATES; i++) {
+            packet.writeCoord(i & 15, 64 + (i >> 4), -i);
+            packet.writeString(names[i % names.length]);
+            packet.writeByteArray(data);
+        }
+        ByteBuf buf = packet.toPacket().payload();
+        payload = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), payload);
+        StringTable.enable("ccbench_interned");
+    }
+
+    @Benchmark
+    public void readAllocating(Blackhole bh) {
+        PacketCustom in = new PacketCustom(Unpooled.wrappedBuffer(payload), "ccbench");
+        for (int i = 0; i < UPDATES; i++) {
+            bh.consume(in.readCoord());
+            bh.consume(in.readString());
+            bh.consume(in.readByteArray(16));
+        }
+    }
+
+    @Benchmark
+    public void readInPlace(Blackhole bh) {
+        PacketCustom in = new PacketCustom(Unpooled.wrappedBuffer(payload), "ccbench_interned");
+        for (int i = 0; i < UPDATES; i++) {
+            bh.consume(in.readCoord(coord));
+            bh.consume(in.readString());
+            bh.consume(in.readBytes(data, 0, 16));
+        }
+    }
+}
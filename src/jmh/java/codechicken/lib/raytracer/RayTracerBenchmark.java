@@ -0,0 +1,58 @@
+package codechicken.lib.raytracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.util.MovingObjectPosition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Vector3;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RayTracerBenchmark {
+
+    private List<IndexedCuboid6> cuboids;
+    private CuboidBVH bvh;
+    private RayTracer tracer;
+    private Vector3 start;
+    private Vector3 end;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(0);
+        cuboids = new ArrayList<IndexedCuboid6>();
+        for (int i = 0; i < 50; i++) {
+            double x = rand.nextDouble() * 0.8;
+            double y = rand.nextDouble() * 0.8;
+            double z = rand.nextDouble() * 0.8;
+            double s = 0.05 + rand.nextDouble() * 0.15;
+            cuboids.add(new IndexedCuboid6(i, new Cuboid6(x, y, z, x + s, y + s, z + s)));
+        }
+        bvh = new CuboidBVH(cuboids);
+        tracer = RayTracer.instance();
+        start = new Vector3(-1, 0.45, 0.5);
+        end = new Vector3(2, 0.55, 0.45);
+    }
+
+    @Benchmark
+    public MovingObjectPosition rayTraceCuboids() {
+        return tracer.rayTraceCuboids(start, end, cuboids);
+    }
+
+    @Benchmark
+    public MovingObjectPosition rayTraceBVH() {
+        return tracer.rayTraceCuboids(start, end, bvh);
+    }
+}
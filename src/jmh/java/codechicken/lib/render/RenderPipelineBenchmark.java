@@ -0,0 +1,76 @@
+package codechicken.lib.render;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import codechicken.lib.vec.Translation;
+
+/**
+ * Renders through the full pipeline into a CountingVertexSink, no GL context required
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderPipelineBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean compiled;
+
+    private CCRenderState state;
+    private CountingVertexSink sink;
+    private CCModel model;
+    private Translation translation;
+    private ColourMultiplier colour;
+
+    @Setup
+    public void setup() {
+        state = CCRenderState.instance();
+        sink = new CountingVertexSink();
+        state.setSinkInstance(sink);
+        state.pipeline.setCompiled(compiled);
+
+        Random rand = new Random(0);
+        int quads = 10000;
+        model = CCModel.quadModel(quads * 4);
+        for (int i = 0; i < quads; i++) {
+            double x = rand.nextDouble() * 16;
+            double y = rand.nextDouble() * 16;
+            double z = rand.nextDouble() * 16;
+            model.verts[i * 4] = new Vertex5(x, y, z, 0, 0);
+            model.verts[i * 4 + 1] = new Vertex5(x, y + 1, z, 0, 1);
+            model.verts[i * 4 + 2] = new Vertex5(x + 1, y + 1, z, 1, 1);
+            model.verts[i * 4 + 3] = new Vertex5(x + 1, y, z, 1, 0);
+        }
+        model.computeNormals();
+
+        translation = new Translation(1, 2, 3);
+        colour = new ColourMultiplier(0xFF8040FF);
+    }
+
+    @Benchmark
+    public double fullBlock() {
+        state.resetInstance();
+        state.useNormals = true;
+        // same operations as largeModel, normals come from the block's sides
+        state.setPipelineInstance(BlockRenderer.fullBlock, 0, 24, translation, colour);
+        BlockRenderer.renderFaces(state, 0);
+        return sink.checksum;
+    }
+
+    @Benchmark
+    public double largeModel() {
+        state.resetInstance();
+        state.useNormals = true;
+        model.render(state, translation, colour);
+        return sink.checksum;
+    }
+}
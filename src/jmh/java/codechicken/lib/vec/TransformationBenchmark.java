@@ -0,0 +1,60 @@
+package codechicken.lib.vec;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransformationBenchmark {
+
+    private static final int VERTICES = 4096;
+
+    private Transformation[] chain;
+    private TransformationList list;
+    private Matrix4 matrix;
+    private Vector3[] vectors;
+    private Vector3 vec = new Vector3();
+
+    @Setup
+    public void setup() {
+        chain = new Transformation[] { new Translation(-0.5, -0.5, -0.5), Rotation.sideRotations[3],
+                new Rotation(0.3, 0, 1, 0), new Scale(0.5), new Translation(0.5, 0.5, 0.5) };
+        list = new TransformationList(chain);
+        matrix = list.compile();
+        vectors = new Vector3[VERTICES];
+        for (int i = 0; i < VERTICES; i++) vectors[i] = new Vector3(i % 16, i / 16 % 16, i / 256);
+    }
+
+    @Benchmark
+    public Matrix4 compile() {
+        return new TransformationList(chain).compile();
+    }
+
+    @Benchmark
+    public double applyList() {
+        double sum = 0;
+        for (int i = 0; i < VERTICES; i++) {
+            list.apply(vec.set(vectors[i]));
+            sum += vec.x;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double applyMatrix() {
+        double sum = 0;
+        for (int i = 0; i < VERTICES; i++) {
+            matrix.apply(vec.set(vectors[i]));
+            sum += vec.x;
+        }
+        return sum;
+    }
+}
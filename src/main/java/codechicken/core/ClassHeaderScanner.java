@@ -0,0 +1,310 @@
+package codechicken.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassReader;
+
+import codechicken.core.asm.CodeChickenCoreModContainer;
+import codechicken.core.launch.CodeChickenCorePlugin;
+
+/**
+ * Finds the classes in mod sources extending or implementing given classes for {@link ClassDiscoverer}. Sources are
+ * scanned in parallel, reading only the superclass and interfaces from the header of each class.
+ * <p>
+ * The class entries of each jar and the headers read from it are cached by path, size and modification time in
+ * asm/cache/discoverer.dat, so unchanged jars are not opened again. The cache is only held in memory while scans are
+ * running, and is read again from the file by the next scan. Directories are always scanned. Matchers are called from
+ * multiple threads.
+ */
+public class ClassHeaderScanner {
+
+    private static final int MAGIC = 0x43434344;
+    private static final int VERSION = 1;
+
+    public static final class Header {
+
+        /**
+         * Internal names, superName is null for java/lang/Object
+         */
+        public final String superName;
+        public final String[] interfaces;
+
+        public Header(String superName, String[] interfaces) {
+            this.superName = superName;
+            this.interfaces = interfaces;
+        }
+
+        /**
+         * @return True if the class directly extends or implements every one of superclasses
+         */
+        public boolean extendsAll(String[] superclasses) {
+            for (String superclass : superclasses) {
+                boolean found = superclass.equals(superName);
+                for (int i = 0; !found && i < interfaces.length; i++) found = superclass.equals(interfaces[i]);
+                if (!found) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Marks entries which failed to read as a class
+     */
+    private static final Header INVALID = new Header(null, new String[0]);
+
+    private static final class JarCache {
+
+        public final long length;
+        public final long modified;
+        public final List<String> entries;
+        public final Map<String, Header> headers = new ConcurrentHashMap<>();
+
+        public JarCache(long length, long modified, List<String> entries) {
+            this.length = length;
+            this.modified = modified;
+            this.entries = entries;
+        }
+    }
+
+    private static final Map<String, JarCache> jars = new ConcurrentHashMap<>();
+    private static boolean loaded;
+    private static volatile boolean dirty;
+    private static int scanning;
+
+    /**
+     * @param sources      Jars and directories to scan
+     * @param matcher      Filters class file names, without their path
+     * @param superclasses Internal names which a class must all directly extend or implement
+     * @return The matching classes of each source, as resource names relative to it, in the order of sources
+     */
+    public static List<List<String>> scan(List<File> sources, IStringMatcher matcher, String[] superclasses) {
+        begin();
+        try {
+            return scanAll(sources, matcher, superclasses);
+        } finally {
+            end();
+        }
+    }
+
+    private static List<List<String>> scanAll(List<File> sources, IStringMatcher matcher, String[] superclasses) {
+        return sources.parallelStream().map(source -> {
+            try {
+                return source.isDirectory() ? scanDirectory(source, matcher, superclasses)
+                        : scanJar(source, matcher, superclasses);
+            } catch (Exception e) {
+                CodeChickenCorePlugin.logger.error("Failed to scan " + source.getAbsolutePath(), e);
+                return Collections.<String>emptyList();
+            }
+        }).collect(Collectors.toList());
+    }
+
+    private static synchronized void begin() {
+        if (scanning++ == 0) load();
+    }
+
+    /**
+     * Saves the cache and, once no other scan is running, drops it from memory. A large pack has hundreds of thousands
+     * of class names, which aren't needed after discovery.
+     */
+    private static synchronized void end() {
+        save();
+        if (--scanning == 0) {
+            jars.clear();
+            loaded = false;
+        }
+    }
+
+    private static boolean matches(IStringMatcher matcher, String resource) {
+        if (!resource.endsWith(".class")) return false;
+
+        int pos = resource.lastIndexOf('/');
+        return matcher.matches(pos == -1 ? resource : resource.substring(pos + 1));
+    }
+
+    private static Header readHeader(String resource, InputStream in) throws IOException {
+        try {
+            ClassReader reader = new ClassReader(IOUtils.toByteArray(in));
+            return new Header(reader.getSuperName(), reader.getInterfaces());
+        } catch (RuntimeException e) {
+            // eg. newer class versions, or resources named .class
+            CodeChickenCorePlugin.logger.debug("Unable to read class: " + resource, e);
+            return INVALID;
+        }
+    }
+
+    private static List<String> scanJar(File file, IStringMatcher matcher, String[] superclasses) throws IOException {
+        String path = file.getAbsolutePath();
+        JarCache cache = jars.get(path);
+        if (cache != null && (cache.length != file.length() || cache.modified != file.lastModified())) cache = null;
+
+        ZipFile zipFile = null;
+        try {
+            if (cache == null) {
+                zipFile = new ZipFile(file);
+                List<String> entries = new ArrayList<>();
+                Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                while (zipEntries.hasMoreElements()) {
+                    ZipEntry zipentry = zipEntries.nextElement();
+                    String name = zipentry.getName().replace('\\', '/');
+                    if (!zipentry.isDirectory() && name.endsWith(".class")) entries.add(name);
+                }
+                jars.put(path, cache = new JarCache(file.length(), file.lastModified(), entries));
+                dirty = true;
+            }
+
+            List<String> found = new ArrayList<>();
+            for (String resource : cache.entries) {
+                if (!matches(matcher, resource)) continue;
+
+                Header header = cache.headers.get(resource);
+                if (header == null) {
+                    if (zipFile == null) zipFile = new ZipFile(file);
+                    ZipEntry entry = zipFile.getEntry(resource);
+                    if (entry == null) continue;
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        header = readHeader(resource, in);
+                    }
+                    cache.headers.put(resource, header);
+                    dirty = true;
+                }
+                if (header != INVALID && header.extendsAll(superclasses)) found.add(resource);
+            }
+            return found;
+        } finally {
+            if (zipFile != null) zipFile.close();
+        }
+    }
+
+    private static List<String> scanDirectory(File directory, IStringMatcher matcher, String[] superclasses)
+            throws IOException {
+        List<String> found = new ArrayList<>();
+        scanDirectory(directory, directory, matcher, superclasses, found);
+        return found;
+    }
+
+    private static void scanDirectory(File directory, File basedirectory, IStringMatcher matcher,
+            String[] superclasses, List<String> found) throws IOException {
+        for (File child : directory.listFiles()) {
+            if (child.isDirectory()) {
+                scanDirectory(child, basedirectory, matcher, superclasses, found);
+            } else if (child.isFile()) {
+                String resource = CommonUtils.getRelativePath(basedirectory, child).replace('\\', '/');
+                if (!matches(matcher, resource)) continue;
+
+                Header header;
+                try (InputStream in = Files.newInputStream(child.toPath())) {
+                    header = readHeader(resource, in);
+                }
+                if (header != INVALID && header.extendsAll(superclasses)) found.add(resource);
+            }
+        }
+    }
+
+    private static File cacheFile() {
+        if (CodeChickenCorePlugin.minecraftDir == null) return null;
+
+        CodeChickenCoreModContainer.loadConfig();
+        if (!CodeChickenCoreModContainer.config.getTag("asmCache").getBooleanValue(true)) return null;
+
+        return new File(CodeChickenCorePlugin.minecraftDir, "asm/cache/discoverer.dat");
+    }
+
+    private static synchronized void load() {
+        if (loaded) return;
+        loaded = true;
+
+        File file = cacheFile();
+        if (file == null || !file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return;
+
+            for (int n = in.readInt(); n > 0; n--) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long modified = in.readLong();
+                List<String> entries = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) entries.add(in.readUTF());
+
+                JarCache cache = new JarCache(length, modified, entries);
+                for (int i = in.readInt(); i > 0; i--) {
+                    String resource = in.readUTF();
+                    if (!in.readBoolean()) {
+                        cache.headers.put(resource, INVALID);
+                        continue;
+                    }
+                    String superName = in.readBoolean() ? in.readUTF() : null;
+                    String[] interfaces = new String[in.readUnsignedShort()];
+                    for (int j = 0; j < interfaces.length; j++) interfaces[j] = in.readUTF();
+                    cache.headers.put(resource, new Header(superName, interfaces));
+                }
+                jars.put(path, cache);
+            }
+        } catch (IOException e) {
+            CodeChickenCorePlugin.logger.error("Failed to load class discovery cache", e);
+            jars.clear();
+        }
+    }
+
+    private static synchronized void save() {
+        File file = cacheFile();
+        if (file == null || !dirty) return;
+        dirty = false;
+
+        try {
+            if (!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+                throw new IOException("Failed to create " + file.getParentFile());
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                // snapshots, as another scan may be adding to the caches
+                List<Map.Entry<String, JarCache>> snapshot = new ArrayList<>(jars.entrySet());
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, JarCache> jar : snapshot) {
+                    JarCache cache = jar.getValue();
+                    out.writeUTF(jar.getKey());
+                    out.writeLong(cache.length);
+                    out.writeLong(cache.modified);
+                    out.writeInt(cache.entries.size());
+                    for (String entry : cache.entries) out.writeUTF(entry);
+
+                    List<Map.Entry<String, Header>> headers = new ArrayList<>(cache.headers.entrySet());
+                    out.writeInt(headers.size());
+                    for (Map.Entry<String, Header> e : headers) {
+                        Header header = e.getValue();
+                        out.writeUTF(e.getKey());
+                        out.writeBoolean(header != INVALID);
+                        if (header == INVALID) continue;
+
+                        out.writeBoolean(header.superName != null);
+                        if (header.superName != null) out.writeUTF(header.superName);
+                        out.writeShort(header.interfaces.length);
+                        for (String iname : header.interfaces) out.writeUTF(iname);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            CodeChickenCorePlugin.logger.error("Failed to save class discovery cache", e);
+        }
+    }
+}
@@ -10,19 +10,27 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
 import codechicken.core.ClientUtils;
+import codechicken.core.commands.CommandNetStats;
 import codechicken.core.featurehack.LiquidTextures;
 import codechicken.core.internal.CCCEventHandler;
 import codechicken.core.launch.CodeChickenCorePlugin;
+import codechicken.lib.asm.ClassHeirachyManager;
 import codechicken.lib.config.ConfigFile;
+import codechicken.lib.packet.PacketDispatchQueue;
+import codechicken.lib.world.ChunkWatchIndex;
 import cpw.mods.fml.common.DummyModContainer;
 import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.LoadController;
 import cpw.mods.fml.common.ModMetadata;
 import cpw.mods.fml.common.event.FMLInitializationEvent;
+import cpw.mods.fml.common.event.FMLLoadCompleteEvent;
 import cpw.mods.fml.common.event.FMLPreInitializationEvent;
+import cpw.mods.fml.common.event.FMLServerStartingEvent;
+import cpw.mods.fml.common.event.FMLServerStoppedEvent;
 import cpw.mods.fml.common.versioning.ArtifactVersion;
 import cpw.mods.fml.common.versioning.VersionParser;
 import cpw.mods.fml.common.versioning.VersionRange;
+import cpw.mods.fml.relauncher.Side;
 
 public class CodeChickenCoreModContainer extends DummyModContainer {
 
@@ -73,6 +81,8 @@ public class CodeChickenCoreModContainer extends DummyModContainer {
 
     @Subscribe
     public void init(FMLInitializationEvent event) {
+        ChunkWatchIndex.init();
+
         if (event.getSide().isClient()) {
             ClientUtils.enhanceSupportersList("CodeChickenCore");
 
@@ -81,6 +91,21 @@ public class CodeChickenCoreModContainer extends DummyModContainer {
         }
     }
 
+    @Subscribe
+    public void loadComplete(FMLLoadCompleteEvent event) {
+        ClassHeirachyManager.save();
+    }
+
+    @Subscribe
+    public void serverStarting(FMLServerStartingEvent event) {
+        event.registerServerCommand(new CommandNetStats());
+    }
+
+    @Subscribe
+    public void serverStopped(FMLServerStoppedEvent event) {
+        PacketDispatchQueue.clear(Side.SERVER);
+    }
+
     @Override
     public VersionRange acceptableMinecraftVersionRange() {
         return VersionParser.parseRange(CodeChickenCorePlugin.mcVersion);
@@ -0,0 +1,36 @@
+package codechicken.core.asm;
+
+import net.minecraft.launchwrapper.IClassTransformer;
+
+import codechicken.lib.asm.ClassHeirachyManager;
+import codechicken.lib.asm.ClassNodePass;
+import codechicken.lib.asm.RedirectorTransformer;
+
+/**
+ * Runs the CodeChickenCore transformers over a single ClassNode per class. The superclass cache is filled from the
+ * class header, then tweaks, default implementations and CCRenderState redirects are applied as passes and the class
+ * is written once. CCTransformers from other mods work on bytes and still run between tweaks and default
+ * implementations, so when any are installed the passes are split around them.
+ */
+public class CompositeTransformer implements IClassTransformer {
+
+    private static final ClassNodePass[] passes = { TweakTransformer.pass, DefaultImplementationTransformer.pass,
+            RedirectorTransformer.pass };
+    private static final ClassNodePass[] beforeDelegated = { TweakTransformer.pass };
+    private static final ClassNodePass[] afterDelegated = { DefaultImplementationTransformer.pass,
+            RedirectorTransformer.pass };
+
+    private final DelegatedTransformer delegated = new DelegatedTransformer();
+
+    @Override
+    public byte[] transform(String name, String tname, byte[] bytes) {
+        if (bytes == null) return null;
+
+        ClassHeirachyManager.declareHeader(tname, bytes);
+        if (!DelegatedTransformer.hasTransformers()) return ClassNodePass.transform(passes, name, tname, bytes);
+
+        bytes = ClassNodePass.transform(beforeDelegated, name, tname, bytes);
+        bytes = delegated.transform(name, tname, bytes);
+        return ClassNodePass.transform(afterDelegated, name, tname, bytes);
+    }
+}
@@ -2,9 +2,11 @@ package codechicken.core.asm;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.TreeMap;
 
 import net.minecraft.launchwrapper.IClassTransformer;
 import net.minecraft.launchwrapper.LaunchClassLoader;
@@ -14,15 +16,18 @@ import org.objectweb.asm.tree.MethodNode;
 
 import codechicken.lib.asm.ASMHelper;
 import codechicken.lib.asm.ClassHeirachyManager;
+import codechicken.lib.asm.ClassNodePass;
+import codechicken.lib.asm.ConstantPoolPrefilter;
 import codechicken.lib.asm.ObfMapping;
+import codechicken.lib.asm.TransformedClassCache;
 
 public class DefaultImplementationTransformer implements IClassTransformer {
 
     private static LaunchClassLoader cl = (LaunchClassLoader) ClassHeirachyManager.class.getClassLoader();
 
-    private static ClassNode getClassNode(String name) {
+    private static byte[] getClassBytes(String name) {
         try {
-            return ASMHelper.createClassNode(cl.getClassBytes(name.replace('/', '.')));
+            return cl.getClassBytes(name.replace('/', '.'));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -32,14 +37,22 @@ public class DefaultImplementationTransformer implements IClassTransformer {
 
         public final String iname;
         public ArrayList<MethodNode> impls = new ArrayList<MethodNode>();
+        /**
+         * Identifies the interface and implementation for {@link TransformedClassCache}
+         */
+        public final String fingerprint;
 
         public InterfaceImpl(String iname, String cname) {
             this.iname = iname;
+            byte[] ibytes = getClassBytes(iname);
+            byte[] cbytes = getClassBytes(cname);
+            fingerprint = iname + "=" + cname + ":" + Arrays.hashCode(ibytes) + ":" + Arrays.hashCode(cbytes);
+
             HashSet<String> names = new HashSet<String>();
-            ClassNode inode = getClassNode(iname);
+            ClassNode inode = ASMHelper.createClassNode(ibytes);
             for (MethodNode method : inode.methods) names.add(method.name + method.desc);
 
-            ClassNode cnode = getClassNode(cname);
+            ClassNode cnode = ASMHelper.createClassNode(cbytes);
             for (MethodNode method : cnode.methods) if (names.contains(method.name + method.desc)) {
                 impls.add(method);
                 method.desc = new ObfMapping(cnode.name, method.name, method.desc).toRuntime().s_desc;
@@ -72,22 +85,47 @@ public class DefaultImplementationTransformer implements IClassTransformer {
     }
 
     private static HashMap<String, InterfaceImpl> impls = new HashMap<String, InterfaceImpl>();
+    private static String fingerprint = "";
+    /**
+     * Matches classes which mention any of the registered interfaces
+     */
+    private static final ConstantPoolPrefilter.Filter prefilter = ConstantPoolPrefilter.register();
 
     public static void registerDefaultImpl(String iname, String cname) {
         impls.put(iname.replace('.', '/'), new InterfaceImpl(iname, cname));
+        prefilter.add(iname.replace('.', '/'));
+
+        TreeMap<String, InterfaceImpl> sorted = new TreeMap<String, InterfaceImpl>(impls);
+        StringBuilder sb = new StringBuilder();
+        for (InterfaceImpl impl : sorted.values()) sb.append(impl.fingerprint).append(';');
+        fingerprint = sb.toString();
     }
 
-    @Override
-    public byte[] transform(String name, String transformedName, byte[] bytes) {
-        if (transformedName.startsWith("net.minecraft") || impls.isEmpty()) return bytes;
+    public static final ClassNodePass pass = new ClassNodePass("ccc.defaultimpl") {
 
-        ClassNode cnode = ASMHelper.createClassNode(bytes);
-        boolean changed = false;
-        for (String iname : cnode.interfaces) {
-            InterfaceImpl impl = impls.get(iname);
-            if (impl != null) changed |= impl.patch(cnode);
+        @Override
+        public boolean accepts(String name, String tname, byte[] bytes) {
+            return !tname.startsWith("net.minecraft") && !impls.isEmpty() && prefilter.matches(bytes);
         }
 
-        return changed ? ASMHelper.createBytes(cnode, 0) : bytes;
+        @Override
+        public String fingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public boolean transform(String name, String tname, ClassNode cnode) {
+            boolean changed = false;
+            for (String iname : cnode.interfaces) {
+                InterfaceImpl impl = impls.get(iname);
+                if (impl != null) changed |= impl.patch(cnode);
+            }
+            return changed;
+        }
+    };
+
+    @Override
+    public byte[] transform(String name, String transformedName, byte[] bytes) {
+        return pass.transform(name, transformedName, bytes);
     }
 }
@@ -40,6 +40,10 @@ public class DelegatedTransformer implements IClassTransformer {
         }
     }
 
+    public static boolean hasTransformers() {
+        return !delegatedTransformers.isEmpty();
+    }
+
     @Override
     public byte[] transform(String name, String tname, byte[] bytes) {
         if (bytes == null) return null;
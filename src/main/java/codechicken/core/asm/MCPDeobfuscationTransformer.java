@@ -1,5 +1,6 @@
 package codechicken.core.asm;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Collections;
@@ -27,6 +28,7 @@ import codechicken.lib.asm.ASMHelper;
 import codechicken.lib.asm.ASMInit;
 import codechicken.lib.asm.CC_ClassWriter;
 import codechicken.lib.asm.ObfMapping;
+import codechicken.lib.asm.TransformedClassCache;
 import codechicken.obfuscator.IHeirachyEvaluator;
 import codechicken.obfuscator.ObfuscationMap.ObfuscationEntry;
 import codechicken.obfuscator.ObfuscationRun;
@@ -72,6 +74,10 @@ public class MCPDeobfuscationTransformer implements IClassTransformer, Opcodes,
     private static MCPDeobfuscationTransformer instance = new MCPDeobfuscationTransformer();
 
     private static boolean activated;
+    /**
+     * The mappings in use, for {@link TransformedClassCache}
+     */
+    private static String fingerprint;
 
     private static Field f_transformers;
     private static Field f_modifiers;
@@ -123,10 +129,12 @@ public class MCPDeobfuscationTransformer implements IClassTransformer, Opcodes,
         if (CodeChickenCoreModContainer.config.getTag("dev.deobfuscate")
                 .setComment("set to true to completely deobfuscate mcp names")
                 .getBooleanValue(!ObfMapping.obfuscated)) {
-            run = new ObfuscationRun(
-                    false,
-                    ObfMapping.MCPRemapper.getConfFiles(),
-                    ObfuscationRun.fillDefaults(new HashMap<String, String>()));
+            File[] confFiles = ObfMapping.MCPRemapper.getConfFiles();
+            run = new ObfuscationRun(false, confFiles, ObfuscationRun.fillDefaults(new HashMap<String, String>()));
+            StringBuilder sb = new StringBuilder(String.valueOf(ObfMapping.obfuscated));
+            for (File file : confFiles)
+                sb.append(";" + file.getPath() + ":" + file.length() + ":" + file.lastModified());
+            fingerprint = sb.toString();
             run.obf.setHeirachyEvaluator(instance);
             run.setQuiet().parseMappings();
             Collections.addAll(excludedPackages, run.config.get("excludedPackages").split(";"));
@@ -150,6 +158,10 @@ public class MCPDeobfuscationTransformer implements IClassTransformer, Opcodes,
 
         if (!activated || bytes == null) return bytes;
 
+        return TransformedClassCache.transform("ccc.mcpdeobf", fingerprint, name, bytes, this::remap);
+    }
+
+    private byte[] remap(byte[] bytes) {
         ClassNode cnode = ASMHelper.createClassNode(bytes, ClassReader.EXPAND_FRAMES);
         ClassWriter cw = new CC_ClassWriter(0, true);
         run.remap(cnode, cw);
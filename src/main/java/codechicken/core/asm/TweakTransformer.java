@@ -14,6 +14,7 @@ import org.objectweb.asm.tree.MethodNode;
 import codechicken.lib.asm.ASMBlock;
 import codechicken.lib.asm.ASMInit;
 import codechicken.lib.asm.ASMReader;
+import codechicken.lib.asm.ClassNodePass;
 import codechicken.lib.asm.ModularASMTransformer;
 import codechicken.lib.asm.ModularASMTransformer.MethodReplacer;
 import codechicken.lib.asm.ModularASMTransformer.MethodTransformer;
@@ -28,6 +29,7 @@ public class TweakTransformer implements IClassTransformer, Opcodes {
     }
 
     private static ModularASMTransformer transformer = new ModularASMTransformer();
+    public static final ClassNodePass pass = transformer.asPass("ccc.tweaks");
     private static Map<String, ASMBlock> blocks = ASMReader.loadResource("/assets/codechickencore/asm/tweaks.asm");
     public static ConfigTag tweaks;
 
@@ -104,6 +106,6 @@ public class TweakTransformer implements IClassTransformer, Opcodes {
 
     @Override
     public byte[] transform(String name, String tname, byte[] bytes) {
-        return transformer.transform(name, bytes);
+        return pass.transform(name, tname, bytes);
     }
 }
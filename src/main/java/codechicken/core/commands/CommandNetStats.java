@@ -0,0 +1,88 @@
+package codechicken.core.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.ChatComponentText;
+
+import codechicken.lib.packet.PacketStats;
+
+/**
+ * /ccnet, reports PacketCustom traffic from {@link PacketStats}
+ */
+public class CommandNetStats extends CoreCommand {
+
+    public static final int TOP = 10;
+
+    @Override
+    public String getCommandName() {
+        return "ccnet";
+    }
+
+    @Override
+    public boolean OPOnly() {
+        return true;
+    }
+
+    @Override
+    public int minimumParameters() {
+        return 0;
+    }
+
+    @Override
+    public void printHelp(WCommandSender listener) {
+        chat(listener, "/ccnet [rate|total]: Top " + TOP + " channel types by current or total bytes");
+        chat(listener, "/ccnet reset: Reset all counters");
+        chat(listener, "/ccnet dump: Write all counters to ccnet.csv");
+    }
+
+    private static void chat(WCommandSender listener, String s) {
+        listener.addChatMessage(new ChatComponentText(s));
+    }
+
+    @Override
+    public void handleCommand(String command, String playername, String[] args, WCommandSender listener) {
+        String sub = args.length == 0 ? "rate" : args[0];
+        if (sub.equals("reset")) {
+            PacketStats.reset();
+            chat(listener, "Network counters reset");
+        } else if (sub.equals("dump")) {
+            File file = MinecraftServer.getServer().getFile("ccnet.csv");
+            try {
+                PacketStats.dumpCSV(file);
+                chat(listener, "Network counters written to " + file.getAbsolutePath());
+            } catch (IOException e) {
+                chat(listener, "Failed to write " + file.getAbsolutePath() + ": " + e.getMessage());
+            }
+        } else if (sub.equals("rate") || sub.equals("total")) {
+            report(listener, sub.equals("rate"));
+        } else printHelp(listener);
+    }
+
+    private void report(WCommandSender listener, boolean rate) {
+        if (!PacketStats.enabled) chat(listener, "Network counters are disabled");
+
+        List<PacketStats.Counters> all = PacketStats.all();
+        if (rate) Collections.sort(all, (a, b) -> Double.compare(b.bytesPerSecond(), a.bytesPerSecond()));
+        else Collections.sort(all, (a, b) -> Long.compare(b.bytes.sum(), a.bytes.sum()));
+
+        chat(listener, rate ? "Channel:type, bytes/s, packets/s" : "Channel:type, bytes (raw), packets, handler ms");
+        for (int i = 0; i < all.size() && i < TOP; i++) {
+            PacketStats.Counters c = all.get(i);
+            String name = (c.direction == PacketStats.Direction.INBOUND ? "<- " : "-> ") + c.channel + ":" + c.type;
+            if (rate) chat(listener, String.format("%s, %.0f, %.1f", name, c.bytesPerSecond(), c.packetsPerSecond()));
+            else chat(
+                    listener,
+                    String.format(
+                            "%s, %d (%d), %d, %.1f",
+                            name,
+                            c.bytes.sum(),
+                            c.rawBytes.sum(),
+                            c.packets.sum(),
+                            c.handlerNanos.sum() / 1E6));
+        }
+    }
+}
@@ -1,20 +1,40 @@
 package codechicken.lib.asm;
 
-import java.util.ArrayList;
+import static codechicken.lib.asm.ASMHelper.logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 import net.minecraft.launchwrapper.IClassTransformer;
 import net.minecraft.launchwrapper.Launch;
 import net.minecraft.launchwrapper.LaunchClassLoader;
 
-import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.ClassReader;
 
 import cpw.mods.fml.common.asm.transformers.deobf.FMLDeobfuscatingRemapper;
 
 /**
  * This is added as a class transformer if CodeChickenCore is installed. Adding it as a class transformer will speed
  * evaluation up slightly by automatically caching superclasses when they are first loaded.
+ * <p>
+ * Class names are interned to int ids, and the flattened ancestry of each class is built once into a small open
+ * addressed set of ids, so {@link #classExtends} is a constant time lookup. All state is safe to use from multiple
+ * threads. The declared hierarchy is saved alongside the {@link TransformedClassCache} after loading completes, and
+ * used to pre-warm the cache on the next launch until the classes are declared again.
  */
 public class ClassHeirachyManager implements IClassTransformer {
 
@@ -22,43 +42,290 @@ public class ClassHeirachyManager implements IClassTransformer {
         ASMInit.init();
     }
 
+    private static final int MAGIC = 0x43434848;
+    private static final int VERSION = 1;
+
     public static class SuperCache {
 
-        String superclass;
+        public final String name;
+        public final int id;
+        /**
+         * null for java.lang.Object
+         */
+        public final String superclass;
+        /**
+         * Ids of the superclass and interfaces
+         */
+        volatile int[] parentIds;
+        /**
+         * Loaded from the previous launch, replaced if the class is declared differently
+         */
+        final boolean preloaded;
+        private volatile Ancestry ancestry;
+        /**
+         * @deprecated Only filled by {@link #flatten()}, use {@link ClassHeirachyManager#classExtends}
+         */
+        @Deprecated
         public HashSet<String> parents = new HashSet<String>();
-        private boolean flattened;
 
-        public void add(String parent) {
+        SuperCache(String name, String superclass, int[] parentIds, boolean preloaded) {
+            this.name = name;
+            this.id = intern(name);
+            this.superclass = superclass;
+            this.parentIds = parentIds;
+            this.preloaded = preloaded;
+        }
+
+        /**
+         * @deprecated Declare classes through {@link ClassHeirachyManager#declareHeader}
+         */
+        @Deprecated
+        public synchronized void add(String parent) {
+            parent = toKey(parent);
             parents.add(parent);
+            int pid = intern(parent);
+            for (int p : parentIds) if (p == pid) return;
+
+            int[] a = Arrays.copyOf(parentIds, parentIds.length + 1);
+            a[parentIds.length] = pid;
+            parentIds = a;
+            invalidate();
+        }
+
+        /**
+         * @deprecated Fills {@link #parents} with every ancestor, use {@link ClassHeirachyManager#classExtends}
+         */
+        @Deprecated
+        public synchronized void flatten() {
+            for (int entry : ancestry().table) if (entry != 0) parents.add(nameOf(entry - 1));
+        }
+
+        /**
+         * @return True if this class extends or implements the class with id, directly or indirectly
+         */
+        public boolean extendsClass(int id) {
+            return contains(ancestry().table, id);
         }
 
-        public void flatten() {
-            if (flattened) return;
+        private Ancestry ancestry() {
+            Ancestry a = ancestry;
+            int epoch = ClassHeirachyManager.epoch;
+            if (a != null && a.epoch == epoch) return a;
 
-            for (String s : new ArrayList<String>(parents)) {
-                SuperCache c = declareClass(s);
-                if (c != null) {
-                    c.flatten();
-                    parents.addAll(c.parents);
-                }
+            // racing threads compute the same set, so there's no need to lock
+            int[] ids = new int[8];
+            int n = 0;
+            for (int parent : parentIds) {
+                ids = add(ids, n++, parent);
+                SuperCache cache = declareClass(nameOf(parent));
+                if (cache == null) continue;
+
+                for (int entry : cache.ancestry().table) if (entry != 0) ids = add(ids, n++, entry - 1);
             }
-            flattened = true;
+            ancestry = a = new Ancestry(epoch, table(ids, n));
+            return a;
         }
     }
 
-    public static HashMap<String, SuperCache> superclasses = new HashMap<String, SuperCache>();
+    private static final class Ancestry {
+
+        public final int epoch;
+        /**
+         * Open addressed set of id + 1, 0 for empty slots
+         */
+        public final int[] table;
+
+        public Ancestry(int epoch, int[] table) {
+            this.epoch = epoch;
+            this.table = table;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, SuperCache> caches = new ConcurrentHashMap<>();
+    /**
+     * @deprecated A thread safe view of the cache, kept as a HashMap for compatibility
+     */
+    @Deprecated
+    public static HashMap<String, SuperCache> superclasses = new ConcurrentView();
     private static LaunchClassLoader cl = Launch.classLoader;
 
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[1024];
+    private static int nextId;
+    /**
+     * Incremented when a preloaded class is replaced, invalidating all flattened ancestry
+     */
+    private static volatile int epoch;
+
+    private static final Map<String, String> keys = new ConcurrentHashMap<>();
+    private static final Map<String, String> unKeys = new ConcurrentHashMap<>();
+
+    private static volatile boolean loaded;
+    private static boolean dirty;
+
+    /**
+     * Delegates to the concurrent cache, for code using the superclasses field
+     */
+    private static final class ConcurrentView extends HashMap<String, SuperCache> {
+
+        @Override
+        public int size() {
+            return caches.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return caches.isEmpty();
+        }
+
+        @Override
+        public SuperCache get(Object key) {
+            return caches.get(key);
+        }
+
+        @Override
+        public SuperCache getOrDefault(Object key, SuperCache defaultValue) {
+            return caches.getOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return caches.containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return caches.containsValue(value);
+        }
+
+        @Override
+        public SuperCache put(String key, SuperCache value) {
+            invalidate();
+            return caches.put(key, value);
+        }
+
+        @Override
+        public SuperCache putIfAbsent(String key, SuperCache value) {
+            return caches.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends SuperCache> m) {
+            invalidate();
+            caches.putAll(m);
+        }
+
+        @Override
+        public SuperCache remove(Object key) {
+            invalidate();
+            return caches.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            invalidate();
+            caches.clear();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return caches.keySet();
+        }
+
+        @Override
+        public Collection<SuperCache> values() {
+            return caches.values();
+        }
+
+        @Override
+        public Set<Map.Entry<String, SuperCache>> entrySet() {
+            return caches.entrySet();
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super String, ? super SuperCache> action) {
+            caches.forEach(action);
+        }
+    }
+
     public static String toKey(String name) {
-        if (ObfMapping.obfuscated)
-            name = FMLDeobfuscatingRemapper.INSTANCE.map(name.replace('.', '/')).replace('/', '.');
-        return name;
+        if (!ObfMapping.obfuscated) return name.replace('/', '.');
+
+        String key = keys.get(name);
+        if (key == null) keys.put(
+                name,
+                key = FMLDeobfuscatingRemapper.INSTANCE.map(name.replace('.', '/')).replace('/', '.'));
+        return key;
     }
 
     public static String unKey(String name) {
-        if (ObfMapping.obfuscated)
-            name = FMLDeobfuscatingRemapper.INSTANCE.unmap(name.replace('.', '/')).replace('/', '.');
-        return name;
+        if (!ObfMapping.obfuscated) return name.replace('/', '.');
+
+        String key = unKeys.get(name);
+        if (key == null) unKeys.put(
+                name,
+                key = FMLDeobfuscatingRemapper.INSTANCE.unmap(name.replace('.', '/')).replace('/', '.'));
+        return key;
+    }
+
+    static int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+
+        synchronized (ids) {
+            id = ids.get(name);
+            if (id != null) return id;
+
+            String[] n = names;
+            if (nextId == n.length) names = n = Arrays.copyOf(n, n.length * 2);
+            n[nextId] = name;
+            // published after the name is stored, so any thread which sees the id can find the name
+            ids.put(name, nextId);
+            return nextId++;
+        }
+    }
+
+    /**
+     * Discards all flattened ancestry, after the declared hierarchy changed
+     */
+    private static void invalidate() {
+        synchronized (ids) {
+            epoch++;
+        }
+        dirty = true;
+    }
+
+    private static String nameOf(int id) {
+        return names[id];
+    }
+
+    private static int[] add(int[] a, int i, int id) {
+        if (i == a.length) a = Arrays.copyOf(a, a.length * 2);
+        a[i] = id;
+        return a;
+    }
+
+    private static int slot(int id, int mask) {
+        return id * 0x9E3779B9 >>> 16 & mask;
+    }
+
+    private static int[] table(int[] ids, int n) {
+        int[] table = new int[Integer.highestOneBit(Math.max(n, 1)) << 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < n; i++) {
+            int s = slot(ids[i], mask);
+            while (table[s] != 0 && table[s] != ids[i] + 1) s = s + 1 & mask;
+            table[s] = ids[i] + 1;
+        }
+        return table;
+    }
+
+    private static boolean contains(int[] table, int id) {
+        int mask = table.length - 1;
+        for (int s = slot(id, mask);; s = s + 1 & mask) {
+            if (table[s] == 0) return false;
+            if (table[s] == id + 1) return true;
+        }
     }
 
     /**
@@ -76,19 +343,22 @@ public class ClassHeirachyManager implements IClassTransformer {
         if (cache == null) // just can't handle this
             return false;
 
-        cache.flatten();
-        return cache.parents.contains(superclass);
+        // ancestors beyond the direct parents are only interned as the ancestry is built, so build it first
+        cache.ancestry();
+        return cache.extendsClass(intern(superclass));
     }
 
     private static SuperCache declareClass(String name) {
+        if (!loaded) load();
+
         name = toKey(name);
-        SuperCache cache = superclasses.get(name);
+        SuperCache cache = caches.get(name);
 
         if (cache != null) return cache;
 
         try {
             byte[] bytes = cl.getClassBytes(unKey(name));
-            if (bytes != null) cache = declareASM(bytes);
+            if (bytes != null) cache = declareASM(bytes, false);
         } catch (Exception e) {}
 
         if (cache != null) return cache;
@@ -102,43 +372,92 @@ public class ClassHeirachyManager implements IClassTransformer {
 
     private static SuperCache declareReflection(String name) throws ClassNotFoundException {
         Class<?> aclass = Class.forName(name);
+        if (name.equals("java.lang.Object")) return declare(name, null, new String[0], false, false);
 
-        SuperCache cache = getOrCreateCache(name);
-        if (aclass.isInterface()) cache.superclass = "java.lang.Object";
-        else if (name.equals("java.lang.Object")) return cache;
-        else cache.superclass = toKey(aclass.getSuperclass().getName());
+        String superclass = aclass.isInterface() ? "java.lang.Object" : toKey(aclass.getSuperclass().getName());
+        Class<?>[] interfaces = aclass.getInterfaces();
+        String[] inames = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) inames[i] = toKey(interfaces[i].getName());
 
-        cache.add(cache.superclass);
-        for (Class<?> iclass : aclass.getInterfaces()) cache.add(toKey(iclass.getName()));
+        return declare(name, superclass, inames, false, false);
+    }
 
-        return cache;
+    /**
+     * Caches the superclass and interfaces from the header of the class bytes, without parsing the rest
+     *
+     * @param replace Replace a class preloaded from the previous launch
+     */
+    private static SuperCache declareASM(byte[] bytes, boolean replace) {
+        ClassReader reader = new ClassReader(bytes);
+        String name = toKey(reader.getClassName());
+        String superclass = reader.getSuperName() == null ? null : toKey(reader.getSuperName());
+        String[] interfaces = reader.getInterfaces();
+        for (int i = 0; i < interfaces.length; i++) interfaces[i] = toKey(interfaces[i]);
+
+        SuperCache cache = caches.get(name);
+        if (cache != null && (!replace || !cache.preloaded)) return cache;
+
+        boolean changed = cache != null && !sameParents(cache, superclass, interfaces);
+        return declare(name, superclass, interfaces, cache != null, changed);
     }
 
-    private static SuperCache declareASM(byte[] bytes) {
-        ClassNode node = ASMHelper.createClassNode(bytes);
-        String name = toKey(node.name);
+    private static boolean sameParents(SuperCache cache, String superclass, String[] interfaces) {
+        if (superclass == null ? cache.superclass != null : !superclass.equals(cache.superclass)) return false;
 
-        SuperCache cache = getOrCreateCache(name);
-        cache.superclass = toKey(node.superName.replace('/', '.'));
-        cache.add(cache.superclass);
-        for (String iclass : node.interfaces) cache.add(toKey(iclass.replace('/', '.')));
+        int n = superclass == null ? 0 : 1;
+        int[] parentIds = cache.parentIds;
+        if (parentIds.length != n + interfaces.length) return false;
+        for (int i = 0; i < interfaces.length; i++) if (parentIds[n + i] != intern(interfaces[i])) return false;
+        return true;
+    }
 
+    /**
+     * @param replace    Replace an existing class, instead of returning it
+     * @param invalidate The replaced class had different parents, so any flattened ancestry may be wrong
+     */
+    private static SuperCache declare(String name, String superclass, String[] interfaces, boolean replace,
+            boolean invalidate) {
+        int n = superclass == null ? 0 : 1;
+        int[] parents = new int[n + interfaces.length];
+        if (superclass != null) parents[0] = intern(superclass);
+        for (int i = 0; i < interfaces.length; i++) parents[n + i] = intern(interfaces[i]);
+
+        SuperCache cache = new SuperCache(name, superclass, parents, false);
+        if (replace) {
+            caches.put(name, cache);
+            if (invalidate) invalidate();
+        } else {
+            SuperCache prev = caches.putIfAbsent(name, cache);
+            if (prev != null) return prev;
+        }
+        dirty = true;
         return cache;
     }
 
-    @Override
-    public byte[] transform(String name, String tname, byte[] bytes) {
-        if (bytes == null) return null;
+    /**
+     * Caches the superclass and interfaces of a class from the header of its bytes, without parsing the rest
+     */
+    public static void declareHeader(String tname, byte[] bytes) {
+        if (bytes == null) return;
+        if (!loaded) load();
 
-        if (!superclasses.containsKey(tname)) declareASM(bytes);
+        SuperCache cache = caches.get(tname);
+        if (cache == null || cache.preloaded) declareASM(bytes, true);
+    }
 
+    @Override
+    public byte[] transform(String name, String tname, byte[] bytes) {
+        declareHeader(tname, bytes);
         return bytes;
     }
 
+    /**
+     * @deprecated Declare classes through {@link #declareHeader}
+     */
+    @Deprecated
     public static SuperCache getOrCreateCache(String name) {
-        SuperCache cache = superclasses.get(name);
-        if (cache == null) superclasses.put(name, cache = new SuperCache());
-        return cache;
+        SuperCache cache = caches.get(name);
+        return cache != null ? cache : declare(name, null, new String[0], false, false);
     }
 
     public static String getSuperClass(String name, boolean runtime) {
@@ -146,9 +465,82 @@ public class ClassHeirachyManager implements IClassTransformer {
         SuperCache cache = declareClass(name);
         if (cache == null) return "java.lang.Object";
 
-        cache.flatten();
         String s = cache.superclass;
         if (!runtime) s = FMLDeobfuscatingRemapper.INSTANCE.unmap(s);
         return s;
     }
+
+    private static File cacheFile() {
+        File dir = TransformedClassCache.directory();
+        return dir == null ? null : new File(dir, "hierarchy.dat");
+    }
+
+    /**
+     * Pre-warms the cache with the hierarchy saved by the previous launch
+     */
+    private static synchronized void load() {
+        if (loaded) return;
+        loaded = true;
+
+        File file = cacheFile();
+        if (file == null || !file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != TransformedClassCache.header())
+                return;
+
+            String[] fileNames = new String[in.readInt()];
+            for (int i = 0; i < fileNames.length; i++) fileNames[i] = in.readUTF();
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = fileNames[in.readInt()];
+                int superId = in.readInt();
+                int[] parents = new int[in.readUnsignedShort()];
+                for (int j = 0; j < parents.length; j++) parents[j] = intern(fileNames[in.readInt()]);
+                String superclass = superId < 0 ? null : fileNames[superId];
+                caches.putIfAbsent(name, new SuperCache(name, superclass, parents, true));
+            }
+            logger.debug("Loaded " + count + " cached class hierarchy entries");
+        } catch (IOException e) {
+            logger.error("Failed to load class hierarchy cache", e);
+        }
+    }
+
+    /**
+     * Saves the declared hierarchy for the next launch. Called once loading completes
+     */
+    public static synchronized void save() {
+        File file = cacheFile();
+        if (file == null || !dirty) return;
+        dirty = false;
+
+        // every class in the snapshot interned its name and parents before it was added, so they're below count
+        SuperCache[] snapshot = caches.values().toArray(new SuperCache[0]);
+        String[] n;
+        int count;
+        synchronized (ids) {
+            n = names;
+            count = nextId;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(TransformedClassCache.header());
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) out.writeUTF(n[i]);
+
+            out.writeInt(snapshot.length);
+            for (SuperCache cache : snapshot) {
+                out.writeInt(cache.id);
+                int[] parentIds = cache.parentIds;
+                out.writeInt(cache.superclass == null ? -1 : parentIds[0]);
+                out.writeShort(parentIds.length);
+                for (int parent : parentIds) out.writeInt(parent);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to save class hierarchy cache", e);
+        }
+    }
 }
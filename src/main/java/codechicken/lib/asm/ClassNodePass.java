@@ -0,0 +1,126 @@
+package codechicken.lib.asm;
+
+import static codechicken.lib.asm.ASMHelper.logger;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A transformer working on a ClassNode shared with other passes, so a class changed by several of them is only read
+ * and written once. Passes are run in order by {@link #transform(ClassNodePass[], String, String, byte[])}, which reads
+ * the class with the union of the accepting passes' read flags and writes it with the union of the write flags of the
+ * passes which changed it.
+ */
+public abstract class ClassNodePass {
+
+    /**
+     * A unique name, identifying the pass for {@link TransformedClassCache}
+     */
+    public final String name;
+
+    public ClassNodePass(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Decides whether the pass may change the class, without parsing it (eg. with a {@link ConstantPoolPrefilter})
+     */
+    public abstract boolean accepts(String name, String tname, byte[] bytes);
+
+    /**
+     * @return Any state the output of this pass depends on besides the input bytes
+     */
+    public String fingerprint() {
+        return "";
+    }
+
+    public int readFlags(String name) {
+        return 0;
+    }
+
+    /**
+     * Wraps the visitor the class is read into, eg. with a {@link LocalVariablesSorterVisitor}
+     */
+    public ClassVisitor readVisitor(String name, ClassVisitor cv) {
+        return cv;
+    }
+
+    /**
+     * @return True if cnode was changed
+     */
+    public abstract boolean transform(String name, String tname, ClassNode cnode);
+
+    /**
+     * @return The ClassWriter flags needed if this pass changed the class. Frames should only be computed for passes
+     *         which change control flow, as it's the most expensive part of writing a class.
+     */
+    public int writeFlags(String name) {
+        return 0;
+    }
+
+    /**
+     * Called after a class accepted by this pass was changed and written, eg. for dumping
+     */
+    public void written(String tname, byte[] in, byte[] out) {}
+
+    /**
+     * Runs this pass on its own
+     */
+    public byte[] transform(String name, String tname, byte[] bytes) {
+        return transform(new ClassNodePass[] { this }, name, tname, bytes);
+    }
+
+    /**
+     * Runs the passes which accept the class on a single ClassNode, or returns the result cached from a previous launch
+     */
+    public static byte[] transform(ClassNodePass[] passes, String name, String tname, byte[] bytes) {
+        if (bytes == null) return null;
+
+        boolean[] accepted = new boolean[passes.length];
+        StringBuilder fingerprint = new StringBuilder();
+        for (int i = 0; i < passes.length; i++) if (accepted[i] = passes[i].accepts(name, tname, bytes))
+            fingerprint.append(passes[i].name).append('=').append(passes[i].fingerprint()).append(';');
+
+        if (fingerprint.length() == 0) return bytes;
+
+        return TransformedClassCache.transform(
+                "ccl.passes",
+                fingerprint.toString(),
+                tname,
+                bytes,
+                b -> apply(passes, accepted, name, tname, b));
+    }
+
+    private static byte[] apply(ClassNodePass[] passes, boolean[] accepted, String name, String tname, byte[] bytes) {
+        ClassNode cnode = new ClassNode();
+        ClassVisitor cv = cnode;
+        int readFlags = 0;
+        for (int i = 0; i < passes.length; i++) if (accepted[i]) {
+            readFlags |= passes[i].readFlags(name);
+            cv = passes[i].readVisitor(name, cv);
+        }
+        new ClassReader(bytes).accept(cv, readFlags);
+
+        boolean changed = false;
+        int writeFlags = 0;
+        for (int i = 0; i < passes.length; i++) if (accepted[i]) {
+            boolean passChanged;
+            try {
+                passChanged = passes[i].transform(name, tname, cnode);
+            } catch (RuntimeException e) {
+                logger.error("Pass " + passes[i].name + " failed on " + tname);
+                throw e;
+            }
+            if (passChanged) {
+                changed = true;
+                writeFlags |= passes[i].writeFlags(name);
+            }
+        }
+        if (!changed) return bytes;
+
+        byte[] out = ASMHelper.createBytes(cnode, writeFlags);
+        for (int i = 0; i < passes.length; i++) if (accepted[i]) passes[i].written(tname, bytes, out);
+        return out;
+    }
+}
@@ -0,0 +1,216 @@
+package codechicken.lib.asm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A shared prefilter for class transformers, so classes a transformer can't affect are skipped without parsing them.
+ * Each transformer registers a {@link Filter} with the names (eg. interfaces or field/method owners) it cares about.
+ * A single pass over the constant pool of a class, matching every UTF8 constant against every registered name at once
+ * with an Aho-Corasick automaton, decides which filters match. The result is remembered for the last class scanned on
+ * each thread, so transformers later in the chain which receive the same bytes don't scan again.
+ * <p>
+ * Names match anywhere within a constant, so a name also matches descriptors and signatures which contain it. Filters
+ * may report false positives (eg. for names with non-ASCII characters) but never false negatives. Classes with constant
+ * pool tags unknown to this scanner match every filter.
+ */
+public class ConstantPoolPrefilter {
+
+    private static final int UTF8 = 1;
+    private static final int INT = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STR = 8;
+    private static final int FIELD = 9;
+    private static final int METH = 10;
+    private static final int IMETH = 11;
+    private static final int NAME_TYPE = 12;
+    private static final int HANDLE = 15;
+    private static final int METH_TYPE = 16;
+    private static final int CONDY = 17;
+    private static final int INDY = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    /**
+     * Bytes outside ASCII share one symbol, which keeps the transition table small
+     */
+    private static final int ALPHABET = 128;
+
+    public static final class Filter {
+
+        private final long bit;
+
+        private Filter(long bit) {
+            this.bit = bit;
+        }
+
+        /**
+         * Adds names to this filter, eg. when a transformer is configured after it was registered
+         */
+        public void add(String... names) {
+            addNames(bit, names);
+        }
+
+        /**
+         * @return True if the class may reference one of this filter's names
+         */
+        public boolean matches(byte[] bytes) {
+            return (scan(bytes) & bit) != 0;
+        }
+    }
+
+    /**
+     * A dense DFA over the registered names, states * ALPHABET transitions
+     */
+    private static final class Automaton {
+
+        public final int[] delta;
+        public final long[] out;
+        public final long all;
+
+        public Automaton(List<byte[]> names, List<Long> bits) {
+            int maxStates = 1;
+            for (byte[] name : names) maxStates += name.length;
+            int[] trie = new int[maxStates * ALPHABET];
+            Arrays.fill(trie, -1);
+            long[] out = new long[maxStates];
+            long all = 0;
+
+            int states = 1;
+            for (int i = 0; i < names.size(); i++) {
+                int s = 0;
+                for (byte b : names.get(i)) {
+                    int t = s * ALPHABET + symbol(b);
+                    if (trie[t] < 0) trie[t] = states++;
+                    s = trie[t];
+                }
+                out[s] |= bits.get(i);
+                all |= bits.get(i);
+            }
+
+            // breadth first, fill missing transitions from the failure state and inherit its outputs
+            int[] fail = new int[states];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < ALPHABET; c++) {
+                int t = trie[c];
+                if (t < 0) trie[c] = 0;
+                else {
+                    fail[t] = 0;
+                    queue.add(t);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                out[s] |= out[fail[s]];
+                for (int c = 0; c < ALPHABET; c++) {
+                    int t = trie[s * ALPHABET + c];
+                    int f = trie[fail[s] * ALPHABET + c];
+                    if (t < 0) trie[s * ALPHABET + c] = f;
+                    else {
+                        fail[t] = f;
+                        queue.add(t);
+                    }
+                }
+            }
+
+            this.delta = Arrays.copyOf(trie, states * ALPHABET);
+            this.out = Arrays.copyOf(out, states);
+            this.all = all;
+        }
+    }
+
+    private static final class LastScan {
+
+        public byte[] bytes;
+        public Automaton automaton;
+        public long result;
+    }
+
+    private static final List<byte[]> names = new ArrayList<>();
+    private static final List<Long> nameBits = new ArrayList<>();
+    private static int filters;
+    private static volatile Automaton automaton;
+    private static final ThreadLocal<LastScan> lastScan = ThreadLocal.withInitial(LastScan::new);
+
+    public static synchronized Filter register(String... names) {
+        if (filters == 64) throw new IllegalStateException("Too many constant pool filters");
+        Filter filter = new Filter(1L << filters++);
+        filter.add(names);
+        return filter;
+    }
+
+    private static synchronized void addNames(long bit, String... add) {
+        for (String name : add) {
+            names.add(name.getBytes(StandardCharsets.UTF_8));
+            nameBits.add(bit);
+        }
+        automaton = names.isEmpty() ? null : new Automaton(names, nameBits);
+    }
+
+    private static int symbol(byte b) {
+        return b < 0 ? 0 : b;
+    }
+
+    /**
+     * @return A mask of the filters matching the class
+     */
+    private static long scan(byte[] bytes) {
+        Automaton automaton = ConstantPoolPrefilter.automaton;
+        if (automaton == null || bytes == null || bytes.length < 10) return 0;
+
+        LastScan last = lastScan.get();
+        if (last.bytes == bytes && last.automaton == automaton) return last.result;
+
+        long result = scan(automaton, bytes);
+        last.bytes = bytes;
+        last.automaton = automaton;
+        last.result = result;
+        return result;
+    }
+
+    private static long scan(Automaton automaton, byte[] bytes) {
+        int[] delta = automaton.delta;
+        long[] out = automaton.out;
+        long result = 0;
+        int n = readUnsignedShort(8, bytes);
+        int index = 10;
+        for (int i = 1; i < n; ++i) {
+            int size;
+            switch (bytes[index]) {
+                case FIELD, METH, IMETH, INT, FLOAT, NAME_TYPE, CONDY, INDY -> size = 5;
+                case LONG, DOUBLE -> {
+                    size = 9;
+                    ++i;
+                }
+                case UTF8 -> {
+                    int strLen = readUnsignedShort(index + 1, bytes);
+                    size = 3 + strLen;
+                    int s = 0;
+                    for (int j = index + 3, end = j + strLen; j < end; j++) {
+                        s = delta[s * ALPHABET + symbol(bytes[j])];
+                        result |= out[s];
+                    }
+                    if (result == automaton.all) return result;
+                }
+                case HANDLE -> size = 4;
+                case CLASS, STR, METH_TYPE, MODULE, PACKAGE -> size = 3;
+                // the size of an unknown tag is unknown, so the rest of the pool can't be read
+                default -> {
+                    return automaton.all;
+                }
+            }
+            index += size;
+        }
+        return result;
+    }
+
+    private static int readUnsignedShort(final int index, byte[] bytes) {
+        return ((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF);
+    }
+}
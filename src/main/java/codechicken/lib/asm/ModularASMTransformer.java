@@ -35,26 +35,42 @@ public class ModularASMTransformer {
         public byte[] transform(byte[] bytes) {
             ClassNode cnode = new ClassNode();
             ClassReader reader = new ClassReader(bytes);
-            ClassVisitor cv = cnode;
-            if (!methodsToSort.isEmpty()) cv = new LocalVariablesSorterVisitor(methodsToSort, cv);
-            reader.accept(cv, ClassReader.EXPAND_FRAMES);
+            reader.accept(readVisitor(cnode), ClassReader.EXPAND_FRAMES);
 
             try {
-                int writeFlags = 0;
-                for (ClassNodeTransformer t : transformers) {
-                    t.transform(cnode);
-                    writeFlags |= t.writeFlags;
-                }
-
-                bytes = createBytes(cnode, writeFlags);
-                if (config.getTag("dump_asm").getBooleanValue(false))
-                    dump(bytes, new File("asm/ccl_modular/" + cnode.name.replace('/', '#') + ".txt"), false, false);
+                bytes = createBytes(cnode, transform(cnode));
+                if (config.getTag("dump_asm").getBooleanValue(false)) dump(bytes, dumpFile(cnode.name), false, false);
                 return bytes;
             } catch (RuntimeException e) {
-                dump(bytes, new File("asm/ccl_modular/" + cnode.name.replace('/', '#') + ".txt"), false, false);
+                dump(bytes, dumpFile(cnode.name), false, false);
                 throw e;
             }
         }
+
+        /**
+         * Wraps the visitor the class is read into, sorting local variables of methods which need it
+         */
+        public ClassVisitor readVisitor(ClassVisitor cv) {
+            return methodsToSort.isEmpty() ? cv : new LocalVariablesSorterVisitor(methodsToSort, cv);
+        }
+
+        /**
+         * Applies all transformers to a node read with {@link #readVisitor} and EXPAND_FRAMES
+         *
+         * @return The ClassWriter flags required by the transformers
+         */
+        public int transform(ClassNode cnode) {
+            int writeFlags = 0;
+            for (ClassNodeTransformer t : transformers) {
+                t.transform(cnode);
+                writeFlags |= t.writeFlags;
+            }
+            return writeFlags;
+        }
+    }
+
+    private static File dumpFile(String cname) {
+        return new File("asm/ccl_modular/" + cname.replace('/', '#') + ".txt");
     }
 
     public abstract static class ClassNodeTransformer {
@@ -283,6 +299,52 @@ public class ModularASMTransformer {
         list.add(t);
     }
 
+    public boolean handles(String name) {
+        return transformers.containsKey(name);
+    }
+
+    /**
+     * @return A pass applying this transformer to a ClassNode shared with other passes
+     */
+    public ClassNodePass asPass(String passName) {
+        return new ClassNodePass(passName) {
+
+            @Override
+            public boolean accepts(String name, String tname, byte[] bytes) {
+                return handles(name);
+            }
+
+            @Override
+            public int readFlags(String name) {
+                return ClassReader.EXPAND_FRAMES;
+            }
+
+            @Override
+            public ClassVisitor readVisitor(String name, ClassVisitor cv) {
+                return transformers.get(name).readVisitor(cv);
+            }
+
+            @Override
+            public boolean transform(String name, String tname, ClassNode cnode) {
+                transformers.get(name).transform(cnode);
+                return true;
+            }
+
+            @Override
+            public int writeFlags(String name) {
+                int writeFlags = 0;
+                for (ClassNodeTransformer t : transformers.get(name).transformers) writeFlags |= t.writeFlags;
+                return writeFlags;
+            }
+
+            @Override
+            public void written(String tname, byte[] in, byte[] out) {
+                if (config.getTag("dump_asm").getBooleanValue(false))
+                    dump(out, dumpFile(tname.replace('.', '/')), false, false);
+            }
+        };
+    }
+
     public byte[] transform(String name, byte[] bytes) {
         if (bytes == null) return null;
 
@@ -35,7 +35,7 @@ public class RedirectorTransformer implements IClassTransformer, Opcodes {
     private static final Set<String> redirectedFields = new HashSet<>();
     private static final Set<String> redirectedSimpleMethods = new HashSet<>();
     private static final Set<String> redirectedMethods = new HashSet<>();
-    private static final ClassConstantPoolParser cstPoolParser;
+    private static final ConstantPoolPrefilter.Filter prefilter;
 
     static {
         Collections.addAll(
@@ -82,18 +82,41 @@ public class RedirectorTransformer implements IClassTransformer, Opcodes {
                 "setBrightness",
                 "startDrawing");
 
-        cstPoolParser = new ClassConstantPoolParser(RenderStateClass);
+        prefilter = ConstantPoolPrefilter.register(RenderStateClass);
     }
 
+    public static final ClassNodePass pass = new ClassNodePass("ccl.redirector") {
+
+        @Override
+        public boolean accepts(String name, String tname, byte[] bytes) {
+            return prefilter.matches(bytes);
+        }
+
+        @Override
+        public boolean transform(String name, String tname, ClassNode cn) {
+            return redirect(cn);
+        }
+
+        @Override
+        public int writeFlags(String name) {
+            return ClassWriter.COMPUTE_MAXS;
+        }
+
+        @Override
+        public void written(String tname, byte[] in, byte[] out) {
+            if (DUMP_CLASSES) {
+                saveTransformedClass(in, tname + "_PRE");
+                saveTransformedClass(out, tname + "_POST");
+            }
+        }
+    };
+
     @Override
     public byte[] transform(String name, String transformedName, byte[] basicClass) {
-        if (!cstPoolParser.find(basicClass)) {
-            return basicClass;
-        }
+        return pass.transform(name, transformedName, basicClass);
+    }
 
-        final ClassReader cr = new ClassReader(basicClass);
-        final ClassNode cn = new ClassNode();
-        cr.accept(cn, 0);
+    private static boolean redirect(ClassNode cn) {
         boolean changed = false;
 
         // spotless:off
@@ -146,22 +169,12 @@ public class RedirectorTransformer implements IClassTransformer, Opcodes {
         }
         // spotless:on
 
-        if (changed) {
-            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
-            cn.accept(cw);
-            final byte[] bytes = cw.toByteArray();
-            if (DUMP_CLASSES) {
-                saveTransformedClass(basicClass, transformedName + "_PRE");
-                saveTransformedClass(bytes, transformedName + "_POST");
-            }
-            return bytes;
-        }
-        return basicClass;
+        return changed;
     }
 
-    private File outputDir = null;
+    private static File outputDir = null;
 
-    private void saveTransformedClass(final byte[] data, final String classname) {
+    private static void saveTransformedClass(final byte[] data, final String classname) {
         if (outputDir == null) {
             outputDir = new File(Launch.minecraftHome, "ASM_CCL" + File.separatorChar + "REDIRECTOR");
             try {
@@ -0,0 +1,285 @@
+package codechicken.lib.asm;
+
+import static codechicken.lib.asm.ASMHelper.logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import codechicken.core.asm.CodeChickenCoreModContainer;
+import codechicken.core.asm.Tags;
+import codechicken.core.launch.CodeChickenCorePlugin;
+
+/**
+ * A persistent cache of the output of class transformers, so unchanged classes skip parsing and writing on later
+ * launches. Entries are keyed by a hash of the transformer, its fingerprint (any state the output depends on besides
+ * the input), the class name and the input bytes.
+ * <p>
+ * The cache lives in asm/cache under the minecraft directory, as an index file of fixed size entries (read whole on
+ * load) and a data file of transformed classes. The whole cache is discarded when the CodeChickenCore version, the
+ * minecraft version, CodeChickenCore.cfg or the set of jars in the mods directory change. Once the data file grows
+ * beyond 256MB no more classes are added, and the cache is discarded on the next launch.
+ * <p>
+ * Transformers whose output depends on other classes (beyond those covered by the mods directory) must put that in
+ * their fingerprint, or not use the cache.
+ */
+public class TransformedClassCache {
+
+    public interface Transform {
+
+        /**
+         * @return The transformed bytes, or bytes itself if the class was not changed
+         */
+        byte[] transform(byte[] bytes);
+    }
+
+    private static final int MAGIC = 0x43434354;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /**
+     * 16 byte key, 8 byte offset, 4 byte length (-1 for unchanged)
+     */
+    private static final int ENTRY_SIZE = 28;
+    /**
+     * The cache is reset on the next launch after growing beyond this, as stale entries are never removed
+     */
+    private static final long MAX_DATA_SIZE = 256L << 20;
+
+    private static final class Key {
+
+        public final long hi, lo;
+
+        public Key(long hi, long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).hi == hi && ((Key) o).lo == lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (lo ^ lo >>> 32);
+        }
+    }
+
+    private static final class Entry {
+
+        public final long offset;
+        public final int length;
+
+        public Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    private static boolean initialised;
+    private static boolean enabled;
+    private static File directory;
+    private static long header;
+    private static final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private static RandomAccessFile indexFile;
+    private static RandomAccessFile dataFile;
+    private static long dataSize;
+
+    private static synchronized void init() {
+        if (initialised) return;
+        initialised = true;
+
+        CodeChickenCoreModContainer.loadConfig();
+        if (CodeChickenCorePlugin.minecraftDir == null || !CodeChickenCoreModContainer.config.getTag("asmCache")
+                .setComment("Cache transformed classes on disk, so they aren't transformed again on the next launch")
+                .getBooleanValue(true))
+            return;
+
+        File dir = new File(CodeChickenCorePlugin.minecraftDir, "asm/cache");
+        try {
+            if (!dir.exists() && !dir.mkdirs()) throw new IOException("Failed to create " + dir);
+            indexFile = new RandomAccessFile(new File(dir, "classes.idx"), "rw");
+            dataFile = new RandomAccessFile(new File(dir, "classes.dat"), "rw");
+            header = headerHash();
+            if (!load(header)) reset(header);
+            directory = dir;
+            enabled = true;
+        } catch (Exception e) {
+            logger.error("Failed to open transformed class cache, caching disabled", e);
+        }
+    }
+
+    /**
+     * @return False if the cache is missing, invalid, or for a different configuration
+     */
+    private static boolean load(long header) throws IOException {
+        long indexSize = indexFile.length();
+        dataSize = dataFile.length();
+        if (indexSize < HEADER_SIZE || indexSize > Integer.MAX_VALUE || dataSize > MAX_DATA_SIZE) return false;
+
+        // read onto the heap rather than mapped, as a mapped file can't be truncated on Windows
+        byte[] bytes = new byte[(int) indexSize];
+        indexFile.seek(0);
+        indexFile.readFully(bytes);
+        ByteBuffer map = ByteBuffer.wrap(bytes);
+        if (map.getInt() != MAGIC || map.getInt() != VERSION || map.getLong() != header) return false;
+
+        // a trailing partial entry from an interrupted write is ignored and overwritten
+        int count = (int) ((indexSize - HEADER_SIZE) / ENTRY_SIZE);
+        for (int i = 0; i < count; i++) {
+            Key key = new Key(map.getLong(), map.getLong());
+            long offset = map.getLong();
+            int length = map.getInt();
+            if (length > 0 && offset + length > dataSize) {
+                count = i;
+                break;
+            }
+            entries.put(key, new Entry(offset, length));
+        }
+
+        indexFile.setLength(HEADER_SIZE + (long) count * ENTRY_SIZE);
+        indexFile.seek(indexFile.length());
+        logger.debug("Loaded " + count + " cached classes");
+        return true;
+    }
+
+    private static void reset(long header) throws IOException {
+        entries.clear();
+        dataSize = 0;
+        dataFile.setLength(0);
+        indexFile.setLength(0);
+        indexFile.writeInt(MAGIC);
+        indexFile.writeInt(VERSION);
+        indexFile.writeLong(header);
+    }
+
+    private static long headerHash() throws IOException {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        update(digest, Tags.MOD_VERSION);
+        update(digest, String.valueOf(CodeChickenCorePlugin.currentMcVersion));
+        File config = new File(CodeChickenCorePlugin.minecraftDir, "config/CodeChickenCore.cfg");
+        if (config.exists()) digest.update(Files.readAllBytes(config.toPath()));
+
+        // both directories mods are loaded from, see CodeChickenCorePlugin.scanCodeChickenMods
+        updateMods(digest, "mods");
+        updateMods(digest, "mods/" + CodeChickenCorePlugin.currentMcVersion);
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static void updateMods(MessageDigest digest, String dir) {
+        File[] mods = new File(CodeChickenCorePlugin.minecraftDir, dir).listFiles();
+        if (mods == null) return;
+
+        Arrays.sort(mods);
+        for (File mod : mods)
+            update(digest, dir + "/" + mod.getName() + ":" + mod.length() + ":" + mod.lastModified());
+    }
+
+    /**
+     * @return The cache directory, for other caches sharing its lifetime, or null if caching is disabled
+     */
+    static File directory() {
+        if (!initialised) init();
+        return enabled ? directory : null;
+    }
+
+    /**
+     * @return A hash of everything the cache depends on, changing whenever the cache is discarded
+     */
+    static long header() {
+        return header;
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static Key key(String transformer, String fingerprint, String name, byte[] bytes) {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        update(digest, transformer);
+        update(digest, fingerprint);
+        update(digest, name);
+        digest.update(bytes);
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        return new Key(hash.getLong(), hash.getLong());
+    }
+
+    /**
+     * Applies transform to bytes, or returns the result cached from a previous launch
+     *
+     * @param transformer A unique name for the transformer
+     * @param fingerprint Any state other than the input bytes that the output depends on
+     */
+    public static byte[] transform(String transformer, String fingerprint, String name, byte[] bytes,
+            Transform transform) {
+        if (bytes == null) return null;
+        if (!initialised) init();
+        if (!enabled) return transform.transform(bytes);
+
+        Key key = key(transformer, fingerprint, name, bytes);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.length < 0) return bytes;
+            try {
+                return read(entry);
+            } catch (IOException e) {
+                logger.error("Failed to read transformed class cache for " + name, e);
+            }
+        }
+
+        byte[] out = transform.transform(bytes);
+        store(key, out == bytes ? null : out);
+        return out;
+    }
+
+    private static byte[] read(Entry entry) throws IOException {
+        byte[] out = new byte[entry.length];
+        ByteBuffer buf = ByteBuffer.wrap(out);
+        while (buf.hasRemaining())
+            if (dataFile.getChannel().read(buf, entry.offset + buf.position()) < 0) throw new IOException("EOF");
+        return out;
+    }
+
+    private static synchronized void store(Key key, byte[] out) {
+        if (!enabled || entries.containsKey(key)) return;
+
+        try {
+            long offset = dataSize;
+            if (out != null) {
+                // the class which crosses the limit is still written, so the next launch sees the cache is full
+                if (dataSize > MAX_DATA_SIZE) return;
+                dataFile.seek(offset);
+                dataFile.write(out);
+                dataSize += out.length;
+            }
+            // data first, so an index entry never refers to missing data
+            int length = out == null ? -1 : out.length;
+            ByteBuffer indexEntry = ByteBuffer.allocate(ENTRY_SIZE);
+            indexEntry.putLong(key.hi).putLong(key.lo).putLong(offset).putInt(length);
+            indexFile.write(indexEntry.array());
+            entries.put(key, new Entry(offset, length));
+        } catch (IOException e) {
+            logger.error("Failed to write transformed class cache, caching disabled", e);
+            enabled = false;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package codechicken.lib.data;
+
+/**
+ * Writes and reads the fields of objects of type T. Implementations are generated by {@link DataCodecs}
+ */
+public abstract class DataCodec<T> {
+
+    public abstract void write(MCDataOutput out, T obj);
+
+    /**
+     * Reads all fields into obj
+     */
+    public abstract T read(MCDataInput in, T obj);
+
+    public abstract T newInstance();
+
+    public T read(MCDataInput in) {
+        return read(in, newInstance());
+    }
+}
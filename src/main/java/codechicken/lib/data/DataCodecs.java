@@ -0,0 +1,442 @@
+package codechicken.lib.data;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.fluids.FluidStack;
+
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import codechicken.lib.asm.ASMHelper;
+import codechicken.lib.vec.BlockCoord;
+
+/**
+ * Generates {@link DataCodec}s for plain data classes annotated with {@link Serial}. The codec is a class generated at
+ * runtime that reads and writes the fields directly, so there is no reflection when encoding.
+ * <p>
+ * All public, non-static, non-transient fields are serialised in declaration order, superclass fields first. Booleans
+ * are packed into bitfields at the start, ints and longs are zigzag varints and each BlockCoord is written as a delta
+ * from the previous one, see {@link Serial.Encoding}. Other supported types are the remaining primitives, String,
+ * byte[], enums, ItemStack, FluidStack and NBTTagCompound. The class must be public with a public no-arg constructor.
+ * <p>
+ * Any of the object fields may be null except String and BlockCoord fields, which throw a NullPointerException naming
+ * the field before anything is written.
+ */
+public class DataCodecs {
+
+    private static final String OUT = Type.getInternalName(MCDataOutput.class);
+    private static final String IN = Type.getInternalName(MCDataInput.class);
+    private static final String HELPER = Type.getInternalName(DataCodecs.class);
+    private static final String COORD_DESC = Type.getDescriptor(BlockCoord.class);
+
+    private static class CodecLoader extends ClassLoader {
+
+        public CodecLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        public Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static final Map<Class<?>, DataCodec<?>> codecs = new ConcurrentHashMap<>();
+    private static final ClassValue<Object[]> enumConstants = new ClassValue<Object[]>() {
+
+        @Override
+        protected Object[] computeValue(Class<?> type) {
+            return type.getEnumConstants();
+        }
+    };
+    private static int generated;
+
+    @SuppressWarnings("unchecked")
+    public static <T> DataCodec<T> get(Class<T> clazz) {
+        DataCodec<T> codec = (DataCodec<T>) codecs.get(clazz);
+        if (codec == null) {
+            synchronized (codecs) {
+                codec = (DataCodec<T>) codecs.get(clazz);
+                if (codec == null) codecs.put(clazz, codec = generate(clazz));
+            }
+        }
+        return codec;
+    }
+
+    public static <T> void write(MCDataOutput out, T obj) {
+        @SuppressWarnings("unchecked")
+        DataCodec<T> codec = get((Class<T>) obj.getClass());
+        codec.write(out, obj);
+    }
+
+    public static <T> T read(MCDataInput in, Class<T> clazz) {
+        return get(clazz).read(in);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> DataCodec<T> generate(Class<T> clazz) {
+        if (!clazz.isAnnotationPresent(Serial.class))
+            throw new IllegalArgumentException(clazz.getName() + " is not annotated with @Serial");
+        if (!Modifier.isPublic(clazz.getModifiers()) || Modifier.isAbstract(clazz.getModifiers()))
+            throw new IllegalArgumentException(clazz.getName() + " must be a public concrete class");
+        try {
+            clazz.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(clazz.getName() + " must have a public no-arg constructor");
+        }
+
+        List<Field> fields = new ArrayList<>();
+        collectFields(clazz, fields);
+
+        String owner = Type.getInternalName(clazz);
+        String name = "codechicken/lib/data/codec/" + clazz.getName().replace('.', '_') + "$" + generated++;
+
+        ClassNode cnode = new ClassNode();
+        cnode.version = V1_6;
+        cnode.access = ACC_PUBLIC | ACC_FINAL | ACC_SUPER;
+        cnode.name = name;
+        cnode.superName = Type.getInternalName(DataCodec.class);
+
+        MethodNode init = new MethodNode(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.instructions.add(new VarInsnNode(ALOAD, 0));
+        init.instructions.add(new MethodInsnNode(INVOKESPECIAL, cnode.superName, "<init>", "()V", false));
+        init.instructions.add(new InsnNode(RETURN));
+        cnode.methods.add(init);
+
+        MethodNode newInstance = new MethodNode(ACC_PUBLIC, "newInstance", "()Ljava/lang/Object;", null, null);
+        newInstance.instructions.add(new TypeInsnNode(NEW, owner));
+        newInstance.instructions.add(new InsnNode(DUP));
+        newInstance.instructions.add(new MethodInsnNode(INVOKESPECIAL, owner, "<init>", "()V", false));
+        newInstance.instructions.add(new InsnNode(ARETURN));
+        cnode.methods.add(newInstance);
+
+        cnode.methods.add(generateWrite(owner, fields));
+        cnode.methods.add(generateRead(owner, fields));
+
+        byte[] bytes = ASMHelper.createBytes(cnode, ClassWriter.COMPUTE_MAXS);
+        try {
+            Class<?> codecClass = new CodecLoader(clazz.getClassLoader()).define(name.replace('/', '.'), bytes);
+            return (DataCodec<T>) codecClass.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to generate codec for " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * Collects serialised fields in declaration order, which reflection does not guarantee, by reading the class file
+     */
+    private static void collectFields(Class<?> clazz, List<Field> fields) {
+        if (clazz == Object.class) return;
+        collectFields(clazz.getSuperclass(), fields);
+
+        for (String name : declaredFieldNames(clazz)) {
+            Field field;
+            try {
+                field = clazz.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                throw new IllegalStateException(e);
+            }
+
+            int mod = field.getModifiers();
+            if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || field.isSynthetic()) continue;
+            if (!Modifier.isPublic(mod) || Modifier.isFinal(mod)) throw new IllegalArgumentException(
+                    "Serialised field " + clazz.getName() + "." + name + " must be public and not final");
+            fields.add(field);
+        }
+    }
+
+    private static List<String> declaredFieldNames(Class<?> clazz) {
+        List<String> names = new ArrayList<>();
+        InputStream in = clazz.getClassLoader() == null ? null
+                : clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        if (in != null) {
+            try {
+                ClassNode cnode = ASMHelper.createClassNode(IOUtils.toByteArray(in), 0);
+                for (FieldNode fnode : cnode.fields) names.add(fnode.name);
+                return names;
+            } catch (IOException ignored) {} finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        for (Field field : clazz.getDeclaredFields()) names.add(field.getName());
+        return names;
+    }
+
+    private static Serial.Encoding encoding(Field field) {
+        Serial serial = field.getAnnotation(Serial.class);
+        return serial == null ? Serial.Encoding.DEFAULT : serial.value();
+    }
+
+    private static void pushInt(InsnList insns, int i) {
+        if (i >= -1 && i <= 5) insns.add(new InsnNode(ICONST_0 + i));
+        else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) insns.add(new IntInsnNode(BIPUSH, i));
+        else insns.add(new LdcInsnNode(i));
+    }
+
+    private static FieldInsnNode fieldInsn(int opcode, String owner, Field field) {
+        return new FieldInsnNode(opcode, owner, field.getName(), Type.getDescriptor(field.getType()));
+    }
+
+    private static void invokeOut(InsnList insns, String name, String argDesc) {
+        insns.add(new MethodInsnNode(INVOKEINTERFACE, OUT, name, "(" + argDesc + ")L" + OUT + ";", true));
+        insns.add(new InsnNode(POP));
+    }
+
+    private static void invokeIn(InsnList insns, String name, String retDesc) {
+        insns.add(new MethodInsnNode(INVOKEINTERFACE, IN, name, "()" + retDesc, true));
+    }
+
+    private static void invokeHelper(InsnList insns, String name, String desc) {
+        insns.add(new MethodInsnNode(INVOKESTATIC, HELPER, name, desc, false));
+    }
+
+    /**
+     * write(out = 1, obj = 2), with obj cast into local 3
+     */
+    private static MethodNode generateWrite(String owner, List<Field> fields) {
+        MethodNode mnode = new MethodNode(ACC_PUBLIC, "write", "(L" + OUT + ";Ljava/lang/Object;)V", null, null);
+        InsnList insns = mnode.instructions;
+        insns.add(new VarInsnNode(ALOAD, 2));
+        insns.add(new TypeInsnNode(CHECKCAST, owner));
+        insns.add(new VarInsnNode(ASTORE, 3));
+
+        // fields without a null encoding are checked up front, so a null doesn't leave a half written packet
+        for (Field field : fields) if (field.getType() == String.class || field.getType() == BlockCoord.class) {
+            insns.add(new VarInsnNode(ALOAD, 3));
+            insns.add(fieldInsn(GETFIELD, owner, field));
+            insns.add(new LdcInsnNode(field.getDeclaringClass().getName() + "." + field.getName()));
+            invokeHelper(insns, "checkNotNull", "(Ljava/lang/Object;Ljava/lang/String;)V");
+        }
+
+        List<Field> booleans = new ArrayList<>();
+        for (Field field : fields) if (field.getType() == boolean.class) booleans.add(field);
+        for (int g = 0; g < booleans.size(); g += 32) {
+            int n = Math.min(32, booleans.size() - g);
+            insns.add(new VarInsnNode(ALOAD, 1));
+            insns.add(new InsnNode(ICONST_0));
+            for (int i = 0; i < n; i++) {
+                insns.add(new VarInsnNode(ALOAD, 3));
+                insns.add(fieldInsn(GETFIELD, owner, booleans.get(g + i)));
+                pushInt(insns, i);
+                insns.add(new InsnNode(ISHL));
+                insns.add(new InsnNode(IOR));
+            }
+            if (n <= 8) invokeOut(insns, "writeByte", "I");
+            else invokeOut(insns, "writeVarInt", "I");
+        }
+
+        Field prevCoord = null;
+        for (Field field : fields) {
+            Class<?> type = field.getType();
+            if (type == boolean.class) continue;
+
+            Serial.Encoding encoding = encoding(field);
+            if (type == BlockCoord.class && encoding == Serial.Encoding.DEFAULT) {
+                insns.add(new VarInsnNode(ALOAD, 1));
+                if (prevCoord == null) insns.add(new InsnNode(ACONST_NULL));
+                else {
+                    insns.add(new VarInsnNode(ALOAD, 3));
+                    insns.add(fieldInsn(GETFIELD, owner, prevCoord));
+                }
+                insns.add(new VarInsnNode(ALOAD, 3));
+                insns.add(fieldInsn(GETFIELD, owner, field));
+                invokeOut(insns, "writeCoordDelta", COORD_DESC + COORD_DESC);
+                prevCoord = field;
+                continue;
+            }
+
+            insns.add(new VarInsnNode(ALOAD, 1));
+            insns.add(new VarInsnNode(ALOAD, 3));
+            insns.add(fieldInsn(GETFIELD, owner, field));
+            if (type == int.class) {
+                if (encoding == Serial.Encoding.FIXED) invokeOut(insns, "writeInt", "I");
+                else if (encoding == Serial.Encoding.UNSIGNED) invokeOut(insns, "writeVarInt", "I");
+                else {
+                    invokeHelper(insns, "zigzag", "(I)I");
+                    invokeOut(insns, "writeVarInt", "I");
+                }
+            } else if (type == long.class) {
+                if (encoding == Serial.Encoding.FIXED) invokeOut(insns, "writeLong", "J");
+                else invokeOut(insns, "writeVarLong", "J");
+            } else if (type == byte.class) invokeOut(insns, "writeByte", "I");
+            else if (type == short.class) invokeOut(insns, "writeShort", "I");
+            else if (type == char.class) invokeOut(insns, "writeChar", "C");
+            else if (type == float.class) invokeOut(insns, "writeFloat", "F");
+            else if (type == double.class) invokeOut(insns, "writeDouble", "D");
+            else if (type == String.class) invokeOut(insns, "writeString", "Ljava/lang/String;");
+            else if (type == BlockCoord.class) invokeOut(insns, "writeCoord", COORD_DESC);
+            else if (type == ItemStack.class) invokeOut(insns, "writeItemStack", Type.getDescriptor(ItemStack.class));
+            else if (type == FluidStack.class)
+                invokeOut(insns, "writeFluidStack", Type.getDescriptor(FluidStack.class));
+            else if (type == NBTTagCompound.class)
+                invokeOut(insns, "writeNBTTagCompound", Type.getDescriptor(NBTTagCompound.class));
+            else if (type == byte[].class) invokeHelper(insns, "writeBytes", "(L" + OUT + ";[B)V");
+            else if (type.isEnum()) invokeHelper(insns, "writeEnum", "(L" + OUT + ";Ljava/lang/Enum;)V");
+            else throw new IllegalArgumentException("Unsupported field type: " + field);
+        }
+
+        insns.add(new InsnNode(RETURN));
+        return mnode;
+    }
+
+    /**
+     * read(in = 1, obj = 2), with obj cast into local 3 and boolean bitfields in locals 4+
+     */
+    private static MethodNode generateRead(String owner, List<Field> fields) {
+        MethodNode mnode = new MethodNode(
+                ACC_PUBLIC,
+                "read",
+                "(L" + IN + ";Ljava/lang/Object;)Ljava/lang/Object;",
+                null,
+                null);
+        InsnList insns = mnode.instructions;
+        insns.add(new VarInsnNode(ALOAD, 2));
+        insns.add(new TypeInsnNode(CHECKCAST, owner));
+        insns.add(new VarInsnNode(ASTORE, 3));
+
+        List<Field> booleans = new ArrayList<>();
+        for (Field field : fields) if (field.getType() == boolean.class) booleans.add(field);
+        for (int g = 0; g < booleans.size(); g += 32) {
+            int n = Math.min(32, booleans.size() - g);
+            int local = 4 + g / 32;
+            insns.add(new VarInsnNode(ALOAD, 1));
+            if (n <= 8) {
+                invokeIn(insns, "readByte", "B");
+                insns.add(new IntInsnNode(SIPUSH, 0xFF));
+                insns.add(new InsnNode(IAND));
+            } else invokeIn(insns, "readVarInt", "I");
+            insns.add(new VarInsnNode(ISTORE, local));
+            for (int i = 0; i < n; i++) {
+                insns.add(new VarInsnNode(ALOAD, 3));
+                insns.add(new VarInsnNode(ILOAD, local));
+                pushInt(insns, i);
+                insns.add(new InsnNode(IUSHR));
+                insns.add(new InsnNode(ICONST_1));
+                insns.add(new InsnNode(IAND));
+                insns.add(fieldInsn(PUTFIELD, owner, booleans.get(g + i)));
+            }
+        }
+
+        Field prevCoord = null;
+        for (Field field : fields) {
+            Class<?> type = field.getType();
+            if (type == boolean.class) continue;
+
+            Serial.Encoding encoding = encoding(field);
+            insns.add(new VarInsnNode(ALOAD, 3));
+            if (type == BlockCoord.class && encoding == Serial.Encoding.DEFAULT) {
+                insns.add(new VarInsnNode(ALOAD, 1));
+                if (prevCoord == null) insns.add(new InsnNode(ACONST_NULL));
+                else {
+                    insns.add(new VarInsnNode(ALOAD, 3));
+                    insns.add(fieldInsn(GETFIELD, owner, prevCoord));
+                }
+                insns.add(
+                        new MethodInsnNode(
+                                INVOKEINTERFACE,
+                                IN,
+                                "readCoordDelta",
+                                "(" + COORD_DESC + ")" + COORD_DESC,
+                                true));
+                prevCoord = field;
+            } else {
+                insns.add(new VarInsnNode(ALOAD, 1));
+                if (type == int.class) {
+                    if (encoding == Serial.Encoding.FIXED) invokeIn(insns, "readInt", "I");
+                    else if (encoding == Serial.Encoding.UNSIGNED) invokeIn(insns, "readVarInt", "I");
+                    else {
+                        invokeIn(insns, "readVarInt", "I");
+                        invokeHelper(insns, "unzigzag", "(I)I");
+                    }
+                } else if (type == long.class) {
+                    if (encoding == Serial.Encoding.FIXED) invokeIn(insns, "readLong", "J");
+                    else invokeIn(insns, "readVarLong", "J");
+                } else if (type == byte.class) invokeIn(insns, "readByte", "B");
+                else if (type == short.class) invokeIn(insns, "readShort", "S");
+                else if (type == char.class) invokeIn(insns, "readChar", "C");
+                else if (type == float.class) invokeIn(insns, "readFloat", "F");
+                else if (type == double.class) invokeIn(insns, "readDouble", "D");
+                else if (type == String.class) invokeIn(insns, "readString", "Ljava/lang/String;");
+                else if (type == BlockCoord.class) invokeIn(insns, "readCoord", COORD_DESC);
+                else if (type == ItemStack.class) invokeIn(insns, "readItemStack", Type.getDescriptor(ItemStack.class));
+                else if (type == FluidStack.class)
+                    invokeIn(insns, "readFluidStack", Type.getDescriptor(FluidStack.class));
+                else if (type == NBTTagCompound.class)
+                    invokeIn(insns, "readNBTTagCompound", Type.getDescriptor(NBTTagCompound.class));
+                else if (type == byte[].class) invokeHelper(insns, "readBytes", "(L" + IN + ";)[B");
+                else if (type.isEnum()) {
+                    insns.add(new LdcInsnNode(Type.getType(type)));
+                    invokeHelper(insns, "readEnum", "(L" + IN + ";Ljava/lang/Class;)Ljava/lang/Object;");
+                    insns.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(type)));
+                } else throw new IllegalArgumentException("Unsupported field type: " + field);
+            }
+            insns.add(fieldInsn(PUTFIELD, owner, field));
+        }
+
+        insns.add(new VarInsnNode(ALOAD, 3));
+        insns.add(new InsnNode(ARETURN));
+        return mnode;
+    }
+
+    // Runtime support for generated codecs
+
+    public static void checkNotNull(Object value, String field) {
+        if (value == null) throw new NullPointerException("Serialised field " + field + " must not be null");
+    }
+
+    public static int zigzag(int i) {
+        return i << 1 ^ i >> 31;
+    }
+
+    public static int unzigzag(int i) {
+        return i >>> 1 ^ -(i & 1);
+    }
+
+    /**
+     * Writes the length + 1 of array (0 for null) followed by its contents
+     */
+    public static void writeBytes(MCDataOutput out, byte[] array) {
+        if (array == null) out.writeVarInt(0);
+        else {
+            out.writeVarInt(array.length + 1);
+            out.writeByteArray(array);
+        }
+    }
+
+    public static byte[] readBytes(MCDataInput in) {
+        int len = in.readVarInt() - 1;
+        return len < 0 ? null : in.readByteArray(len);
+    }
+
+    public static void writeEnum(MCDataOutput out, Enum<?> e) {
+        out.writeVarInt(e == null ? 0 : e.ordinal() + 1);
+    }
+
+    public static Object readEnum(MCDataInput in, Class<?> type) {
+        int i = in.readVarInt();
+        return i == 0 ? null : enumConstants.get(type)[i - 1];
+    }
+}
@@ -43,4 +43,58 @@ public interface MCDataInput {
     public ItemStack readItemStack();
 
     public FluidStack readFluidStack();
+
+    /**
+     * Reads a zigzag varint written by {@link MCDataOutput#writeVarLong}
+     */
+    public default long readVarLong() {
+        long l = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = readByte();
+            l |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return l >>> 1 ^ -(l & 1);
+        }
+        throw new IllegalArgumentException("Varlong too long");
+    }
+
+    /**
+     * Reads a coord written by {@link MCDataOutput#writeCoordDelta} with the same base
+     */
+    public default BlockCoord readCoordDelta(BlockCoord base) {
+        int dx = readVarInt(), dy = readVarInt(), dz = readVarInt();
+        BlockCoord coord = new BlockCoord(dx >>> 1 ^ -(dx & 1), dy >>> 1 ^ -(dy & 1), dz >>> 1 ^ -(dz & 1));
+        return base == null ? coord : coord.add(base);
+    }
+
+    public default MCDataInput readBytes(byte[] dst, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) dst[i] = readByte();
+        return this;
+    }
+
+    public default MCDataInput readInts(int[] dst) {
+        return readInts(dst, 0, dst.length);
+    }
+
+    public default MCDataInput readInts(int[] dst, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) dst[i] = readInt();
+        return this;
+    }
+
+    public default MCDataInput readShorts(short[] dst) {
+        return readShorts(dst, 0, dst.length);
+    }
+
+    public default MCDataInput readShorts(short[] dst, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) dst[i] = readShort();
+        return this;
+    }
+
+    public default MCDataInput readFloats(float[] dst) {
+        return readFloats(dst, 0, dst.length);
+    }
+
+    public default MCDataInput readFloats(float[] dst, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) dst[i] = readFloat();
+        return this;
+    }
 }
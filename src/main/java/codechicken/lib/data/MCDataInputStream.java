@@ -14,4 +14,10 @@ public class MCDataInputStream extends InputStream {
     public int read() {
         return in.readByte() & 0xFF;
     }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        in.readBytes(b, off, len);
+        return len;
+    }
 }
@@ -41,4 +41,59 @@ public interface MCDataOutput {
     public MCDataOutput writeItemStack(ItemStack stack);
 
     public MCDataOutput writeFluidStack(FluidStack liquid);
+
+    /**
+     * Writes l as a zigzag varint, 1 byte for -64 to 63 and at most 10 bytes
+     */
+    public default MCDataOutput writeVarLong(long l) {
+        l = l << 1 ^ l >> 63;
+        while ((l & ~0x7FL) != 0) {
+            writeByte((int) (l & 0x7F | 0x80));
+            l >>>= 7;
+        }
+        return writeByte((int) l);
+    }
+
+    /**
+     * Writes coord as zigzag varint offsets from base, or from the origin if base is null. Nearby coords take 3 bytes
+     * rather than 12
+     */
+    public default MCDataOutput writeCoordDelta(BlockCoord base, BlockCoord coord) {
+        int dx = coord.x, dy = coord.y, dz = coord.z;
+        if (base != null) {
+            dx -= base.x;
+            dy -= base.y;
+            dz -= base.z;
+        }
+        writeVarInt(dx << 1 ^ dx >> 31);
+        writeVarInt(dy << 1 ^ dy >> 31);
+        return writeVarInt(dz << 1 ^ dz >> 31);
+    }
+
+    public default MCDataOutput writeInts(int[] array) {
+        return writeInts(array, 0, array.length);
+    }
+
+    public default MCDataOutput writeInts(int[] array, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) writeInt(array[i]);
+        return this;
+    }
+
+    public default MCDataOutput writeShorts(short[] array) {
+        return writeShorts(array, 0, array.length);
+    }
+
+    public default MCDataOutput writeShorts(short[] array, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) writeShort(array[i]);
+        return this;
+    }
+
+    public default MCDataOutput writeFloats(float[] array) {
+        return writeFloats(array, 0, array.length);
+    }
+
+    public default MCDataOutput writeFloats(float[] array, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) writeFloat(array[i]);
+        return this;
+    }
 }
@@ -25,7 +25,7 @@ public class MCDataOutputWrapper implements MCDataOutput {
      * @param i  The integer to write
      */
     public static void writeVarInt(DataOutput to, int i) throws IOException {
-        while ((i & 0x80) != 0) {
+        while ((i & ~0x7F) != 0) {
             to.writeByte(i & 0x7F | 0x80);
             i >>>= 7;
         }
@@ -171,6 +171,36 @@ public class MCDataOutputWrapper implements MCDataOutput {
         return this;
     }
 
+    @Override
+    public MCDataOutputWrapper writeInts(int[] array, int offset, int length) {
+        try {
+            for (int i = offset; i < offset + length; i++) dataout.writeInt(array[i]);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public MCDataOutputWrapper writeShorts(short[] array, int offset, int length) {
+        try {
+            for (int i = offset; i < offset + length; i++) dataout.writeShort(array[i]);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public MCDataOutputWrapper writeFloats(float[] array, int offset, int length) {
+        try {
+            for (int i = offset; i < offset + length; i++) dataout.writeFloat(array[i]);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return this;
+    }
+
     public MCDataOutputWrapper writeCoord(int x, int y, int z) {
         writeInt(x);
         writeInt(y);
@@ -227,6 +257,16 @@ public class MCDataOutputWrapper implements MCDataOutput {
         return this;
     }
 
+    public MCDataOutputWrapper writeNBTTagCompound(NBTTagCompound compound, NBTDeltaDictionary dict) {
+        dict.write(this, compound);
+        return this;
+    }
+
+    public MCDataOutputWrapper writeItemStack(ItemStack stack, boolean large, NBTDeltaDictionary dict) {
+        dict.writeItemStack(this, stack, large);
+        return this;
+    }
+
     public MCDataOutputWrapper writeFluidStack(FluidStack fluid) {
         if (fluid == null) {
             writeShort(-1);
@@ -0,0 +1,194 @@
+package codechicken.lib.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.network.NetworkManager;
+
+/**
+ * Stateful encoding of NBTTagCompounds over one connection. The last {@link #SIZE} compounds sent are remembered by
+ * both ends, so a compound identical to one of them is sent as a back-reference, and one that shares keys with one of
+ * them is sent as the keys that were removed and the keys that changed. Only top level keys are compared, a changed
+ * nested compound is resent in full.
+ * <p>
+ * The writer and reader stay in step only if every packet written with a dictionary is sent exactly once, to the
+ * connection the dictionary belongs to, and read in order on the other end. Never write with a dictionary into a packet
+ * sent to more than one player, or into a packet that may not be sent. Writes and reads may each only happen from one
+ * thread at a time.
+ */
+public class NBTDeltaDictionary {
+
+    public static final int SIZE = 32;
+
+    static final int NULL = 0;
+    static final int FULL = 1;
+    static final int REFERENCE = 2;
+    static final int DELTA = 3;
+
+    private static final Map<NetworkManager, Map<String, NBTDeltaDictionary>> connections = new WeakHashMap<>();
+
+    /**
+     * @return The dictionary for a channel on a connection, discarded when the connection is. On the server the
+     *         connection is {@code player.playerNetServerHandler.netManager}, on the client
+     *         {@code Minecraft.getMinecraft().getNetHandler().getNetworkManager()}
+     */
+    public static NBTDeltaDictionary forConnection(NetworkManager connection, String channel) {
+        synchronized (connections) {
+            Map<String, NBTDeltaDictionary> channels = connections.get(connection);
+            if (channels == null) connections.put(connection, channels = new HashMap<>());
+            NBTDeltaDictionary dict = channels.get(channel);
+            if (dict == null) channels.put(channel, dict = new NBTDeltaDictionary());
+            return dict;
+        }
+    }
+
+    private static class Ring {
+
+        public final NBTTagCompound[] tags = new NBTTagCompound[SIZE];
+        public int next;
+
+        public void add(NBTTagCompound tag) {
+            tags[next] = tag;
+            next = (next + 1) % SIZE;
+        }
+
+        public void clear() {
+            Arrays.fill(tags, null);
+            next = 0;
+        }
+    }
+
+    private final Ring sent = new Ring();
+    private final Ring received = new Ring();
+
+    /**
+     * Forgets everything sent and received. Both ends must reset at the same point in the stream
+     */
+    public void reset() {
+        sent.clear();
+        received.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> keys(NBTTagCompound tag) {
+        return tag.func_150296_c();
+    }
+
+    public void write(MCDataOutput out, NBTTagCompound tag) {
+        if (tag == null) {
+            out.writeVarInt(NULL);
+            return;
+        }
+
+        int hash = tag.hashCode();
+        int best = -1, bestShared = 0;
+        Set<String> keys = keys(tag);
+        for (int i = 0; i < SIZE; i++) {
+            NBTTagCompound base = sent.tags[i];
+            if (base == null) continue;
+            if (base.hashCode() == hash && base.equals(tag)) {
+                out.writeVarInt(REFERENCE);
+                out.writeVarInt(i);
+                return;
+            }
+
+            int shared = 0;
+            for (String key : keys) if (tag.getTag(key).equals(base.getTag(key))) shared++;
+            if (shared > bestShared) {
+                best = i;
+                bestShared = shared;
+            }
+        }
+
+        // a delta costs the removed key names and the changed tags, so don't bother unless most keys are shared
+        if (best < 0 || bestShared * 2 < keys.size()) {
+            out.writeVarInt(FULL);
+            out.writeNBTTagCompound(tag);
+        } else {
+            NBTTagCompound base = sent.tags[best];
+            List<String> removed = new ArrayList<>();
+            for (String key : keys(base)) if (!tag.hasKey(key)) removed.add(key);
+            NBTTagCompound changed = new NBTTagCompound();
+            for (String key : keys) {
+                NBTBase value = tag.getTag(key);
+                if (!value.equals(base.getTag(key))) changed.setTag(key, value);
+            }
+
+            out.writeVarInt(DELTA);
+            out.writeVarInt(best);
+            out.writeVarInt(removed.size());
+            for (String key : removed) out.writeString(key);
+            out.writeNBTTagCompound(changed);
+        }
+        sent.add((NBTTagCompound) tag.copy());
+    }
+
+    public NBTTagCompound read(MCDataInput in) {
+        int mode = in.readVarInt();
+        NBTTagCompound tag;
+        switch (mode) {
+            case NULL:
+                return null;
+            case FULL:
+                tag = in.readNBTTagCompound();
+                break;
+            case REFERENCE:
+                return (NBTTagCompound) base(in.readVarInt()).copy();
+            case DELTA:
+                tag = (NBTTagCompound) base(in.readVarInt()).copy();
+                for (int n = in.readVarInt(); n > 0; n--) tag.removeTag(in.readString());
+                NBTTagCompound changed = in.readNBTTagCompound();
+                for (String key : keys(changed)) tag.setTag(key, changed.getTag(key));
+                break;
+            default:
+                throw new IllegalStateException("Invalid NBT delta mode: " + mode);
+        }
+        received.add(tag);
+        return (NBTTagCompound) tag.copy();
+    }
+
+    private NBTTagCompound base(int index) {
+        NBTTagCompound base = index >= 0 && index < SIZE ? received.tags[index] : null;
+        if (base == null) throw new IllegalStateException("NBT delta dictionary out of sync, no entry " + index);
+        return base;
+    }
+
+    /**
+     * Writes stack in the same format as {@link MCDataOutput#writeItemStack}, but with the tag written through this
+     * dictionary
+     */
+    public void writeItemStack(MCDataOutput out, ItemStack stack, boolean large) {
+        if (stack == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(Item.getIdFromItem(stack.getItem()));
+            if (large) out.writeInt(stack.stackSize);
+            else out.writeByte(stack.stackSize);
+            out.writeShort(stack.getItemDamage());
+            write(out, stack.stackTagCompound);
+        }
+    }
+
+    public ItemStack readItemStack(MCDataInput in, boolean large) {
+        ItemStack item = null;
+        int itemID = in.readInt();
+
+        if (itemID >= 0) {
+            int stackSize = large ? in.readInt() : in.readByte();
+            short damage = in.readShort();
+            item = new ItemStack(Item.getItemById(itemID), stackSize, damage);
+            item.stackTagCompound = read(in);
+        }
+
+        return item;
+    }
+}
@@ -0,0 +1,32 @@
+package codechicken.lib.data;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class for which {@link DataCodecs#get(Class)} can generate a {@link DataCodec}, or overrides the encoding of
+ * a field in such a class.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.FIELD })
+public @interface Serial {
+
+    Encoding value() default Encoding.DEFAULT;
+
+    enum Encoding {
+        /**
+         * int and long fields are zigzag varints, BlockCoords are varint deltas from the previous BlockCoord field
+         */
+        DEFAULT,
+        /**
+         * Full width ints, longs and BlockCoords (3 ints)
+         */
+        FIXED,
+        /**
+         * Plain varint for non-negative int fields
+         */
+        UNSIGNED
+    }
+}
@@ -22,6 +22,10 @@ public class LightMatrix implements CCRenderState.IVertexOperation {
 
     public IBlockAccess access;
     public BlockCoord pos = new BlockCoord();
+    /**
+     * If set, samples are read from the snapshot rather than the world where possible
+     */
+    public LightSnapshot snapshot;
 
     private int sampled = 0;
     private float[] aSamples = new float[27];
@@ -53,19 +57,34 @@ public class LightMatrix implements CCRenderState.IVertexOperation {
 
     public void locate(IBlockAccess a, int x, int y, int z) {
         access = a;
+        snapshot = null;
         pos.set(x, y, z);
         computed = 0;
         sampled = 0;
     }
 
+    /**
+     * Locate using a snapshot of the surrounding section. Blocks outside the snapshot are sampled from its world
+     */
+    public void locate(LightSnapshot snapshot, int x, int y, int z) {
+        locate(snapshot.access, x, y, z);
+        this.snapshot = snapshot;
+    }
+
     public void sample(int i) {
         if ((sampled & 1 << i) == 0) {
             int x = pos.x + (i % 3) - 1;
             int y = pos.y + (i / 9) - 1;
             int z = pos.z + (i / 3 % 3) - 1;
-            Block b = access.getBlock(x, y, z);
-            bSamples[i] = access.getLightBrightnessForSkyBlocks(x, y, z, b.getLightValue(access, x, y, z));
-            aSamples[i] = b.getAmbientOcclusionLightValue();
+            if (snapshot != null && snapshot.contains(x, y, z)) {
+                int index = snapshot.index(x, y, z);
+                bSamples[i] = snapshot.brightness[index];
+                aSamples[i] = snapshot.ao[index];
+            } else {
+                Block b = access.getBlock(x, y, z);
+                bSamples[i] = access.getLightBrightnessForSkyBlocks(x, y, z, b.getLightValue(access, x, y, z));
+                aSamples[i] = b.getAmbientOcclusionLightValue();
+            }
             sampled |= 1 << i;
         }
     }
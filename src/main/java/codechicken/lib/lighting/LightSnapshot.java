@@ -0,0 +1,53 @@
+package codechicken.lib.lighting;
+
+import net.minecraft.block.Block;
+import net.minecraft.world.IBlockAccess;
+
+/**
+ * A copy of the mixed brightness and ambient occlusion values for a 16x16x16 chunk section and a 1 block border, taken
+ * once per section rebuild. LightMatrix instances located with a snapshot read from these arrays instead of querying
+ * the world for each of their 27 samples, and adjacent blocks share the work.
+ */
+public class LightSnapshot {
+
+    public static final int SIZE = 18;
+
+    public IBlockAccess access;
+    /**
+     * The minimum corner of the snapshot, one block below the section origin on each axis
+     */
+    public int minX, minY, minZ;
+
+    public final int[] brightness = new int[SIZE * SIZE * SIZE];
+    public final float[] ao = new float[SIZE * SIZE * SIZE];
+
+    /**
+     * Samples the section with minimum corner (x, y, z) and its border
+     */
+    public LightSnapshot capture(IBlockAccess access, int x, int y, int z) {
+        this.access = access;
+        minX = x - 1;
+        minY = y - 1;
+        minZ = z - 1;
+
+        int i = 0;
+        for (int dy = 0; dy < SIZE; dy++) for (int dz = 0; dz < SIZE; dz++) for (int dx = 0; dx < SIZE; dx++) {
+            int bx = minX + dx;
+            int by = minY + dy;
+            int bz = minZ + dz;
+            Block b = access.getBlock(bx, by, bz);
+            brightness[i] = access.getLightBrightnessForSkyBlocks(bx, by, bz, b.getLightValue(access, bx, by, bz));
+            ao[i] = b.getAmbientOcclusionLightValue();
+            i++;
+        }
+        return this;
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return x >= minX && x < minX + SIZE && y >= minY && y < minY + SIZE && z >= minZ && z < minZ + SIZE;
+    }
+
+    public int index(int x, int y, int z) {
+        return ((y - minY) * SIZE + z - minZ) * SIZE + x - minX;
+    }
+}
@@ -0,0 +1,199 @@
+package codechicken.lib.packet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.Packet;
+
+import cpw.mods.fml.common.FMLCommonHandler;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.PlayerEvent;
+import cpw.mods.fml.common.gameevent.TickEvent;
+import cpw.mods.fml.common.network.ByteBufUtils;
+import cpw.mods.fml.common.network.internal.FMLProxyPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Coalesces the PacketCustoms sent to each player on a channel during a server tick into as few packets as possible,
+ * flushed at the end of the tick. Batching is opt-in per channel with {@link #enable(Object)}, and only applies to
+ * packets sent from the server thread with {@link PacketCustom#sendToPlayer(EntityPlayer)} or
+ * {@link PacketCustom#sendToChunk}.
+ * <p>
+ * A batch is a payload with type 0 (never a valid PacketCustom type), followed by each packet as a varint length and
+ * its payload. Batches are split by the receiving CustomInboundHandler, so packet handlers see the individual packets
+ * in the order they were sent. Order relative to packets on other channels, or vanilla packets, is not preserved.
+ * Packets sent directly on a batched channel (eg. to all players) first flush the batches pending on that channel, so
+ * they don't overtake them.
+ */
+public class PacketBatcher {
+
+    public static final int BATCH_TYPE = 0;
+    /**
+     * Batches are flushed early rather than exceed this size. Larger packets are sent on their own
+     */
+    public static int maxBatchSize = 32000;
+
+    private static class Batch {
+
+        public final String channel;
+        public final ByteBuf buf = Unpooled.buffer();
+        public byte[] first;
+        public int count;
+
+        public Batch(String channel) {
+            this.channel = channel;
+        }
+
+        public void add(byte[] payload) {
+            if (count++ == 0) {
+                first = payload;
+                buf.writeByte(BATCH_TYPE);
+            }
+            ByteBufUtils.writeVarInt(buf, payload.length, 5);
+            buf.writeBytes(payload);
+        }
+
+        public void flush(EntityPlayerMP player) {
+            if (count == 0) return;
+
+            if (count == 1) send(player, channel, first);
+            else {
+                byte[] payload = new byte[buf.readableBytes()];
+                buf.getBytes(buf.readerIndex(), payload);
+                send(player, channel, payload);
+            }
+            buf.clear();
+            first = null;
+            count = 0;
+        }
+    }
+
+    private static final Set<String> channels = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private static final HashMap<EntityPlayerMP, LinkedHashMap<String, Batch>> pending = new HashMap<>();
+    private static volatile Thread serverThread;
+    private static boolean initialised;
+
+    public static synchronized void enable(Object channelKey) {
+        if (!initialised) init();
+        channels.add(PacketCustom.channelName(channelKey));
+    }
+
+    public static void disable(Object channelKey) {
+        channels.remove(PacketCustom.channelName(channelKey));
+    }
+
+    public static boolean isBatched(String channel) {
+        return channels.contains(channel);
+    }
+
+    private static void init() {
+        initialised = true;
+        FMLCommonHandler.instance().bus().register(new PacketBatcher());
+    }
+
+    /**
+     * @return True if packets on channel sent from the current thread will be batched
+     */
+    public static boolean canBatch(String channel) {
+        return Thread.currentThread() == serverThread && channels.contains(channel);
+    }
+
+    /**
+     * Queues packet to be sent to player at the end of the tick.
+     *
+     * @return False if the packet can't be batched and should be sent immediately
+     */
+    static boolean queue(EntityPlayerMP player, PacketCustom packet, String channel) {
+        if (!canBatch(channel)) return false;
+
+        byte[] payload = packet.payload();
+        packet.recordSent();
+        LinkedHashMap<String, Batch> batches = pending.get(player);
+        if (batches == null) pending.put(player, batches = new LinkedHashMap<>());
+        Batch batch = batches.get(channel);
+        if (batch == null) batches.put(channel, batch = new Batch(channel));
+
+        if (batch.buf.readableBytes() + payload.length + 5 > maxBatchSize) {
+            batch.flush(player);
+            if (payload.length + 6 > maxBatchSize) {
+                send(player, channel, payload);
+                return true;
+            }
+        }
+        batch.add(payload);
+        return true;
+    }
+
+    private static void send(EntityPlayerMP player, String channel, byte[] payload) {
+        // not through PacketCustom.sendToPlayer, which would flush this batch again
+        player.playerNetServerHandler.sendPacket(new FMLProxyPacket(Unpooled.wrappedBuffer(payload), channel));
+    }
+
+    /**
+     * Flushes the batches pending on the channel of packet before it is sent directly, so it doesn't overtake them
+     *
+     * @param player The player packet is being sent to, or null for any player
+     */
+    static void beforeSend(Packet packet, EntityPlayerMP player) {
+        if (pending.isEmpty() || Thread.currentThread() != serverThread || !(packet instanceof FMLProxyPacket)) return;
+
+        String channel = ((FMLProxyPacket) packet).channel();
+        if (!channels.contains(channel)) return;
+
+        if (player != null) {
+            LinkedHashMap<String, Batch> batches = pending.get(player);
+            Batch batch = batches == null ? null : batches.get(channel);
+            if (batch != null) batch.flush(player);
+        } else for (Map.Entry<EntityPlayerMP, LinkedHashMap<String, Batch>> entry : pending.entrySet()) {
+            Batch batch = entry.getValue().get(channel);
+            if (batch != null) batch.flush(entry.getKey());
+        }
+    }
+
+    /**
+     * Sends all queued packets. Called automatically at the end of every server tick
+     */
+    public static void flush() {
+        if (pending.isEmpty()) return;
+
+        for (Map.Entry<EntityPlayerMP, LinkedHashMap<String, Batch>> entry : pending.entrySet())
+            for (Batch batch : entry.getValue().values()) batch.flush(entry.getKey());
+        pending.clear();
+    }
+
+    /**
+     * Calls handler for each packet in payload, or once with payload itself if it is not a batch
+     */
+    static void split(ByteBuf payload, PacketVisitor handler) throws Exception {
+        if (payload.getUnsignedByte(payload.readerIndex()) != BATCH_TYPE) {
+            handler.visit(payload);
+            return;
+        }
+
+        payload.skipBytes(1);
+        while (payload.isReadable()) handler.visit(payload.readSlice(ByteBufUtils.readVarInt(payload, 5)));
+    }
+
+    interface PacketVisitor {
+
+        void visit(ByteBuf payload) throws Exception;
+    }
+
+    @SubscribeEvent
+    public void serverTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.START) serverThread = Thread.currentThread();
+        else flush();
+    }
+
+    @SubscribeEvent
+    public void playerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (Thread.currentThread() == serverThread) pending.remove(event.player);
+    }
+}
@@ -0,0 +1,211 @@
+package codechicken.lib.packet;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Compression for PacketCustom payloads. Each thread reuses a single Deflater and Inflater rather than creating (and
+ * leaking native memory until finalization) one per packet. The threshold above which packets are compressed and the
+ * compression level can be set per channel, and every channel records how much it compresses and how long it takes.
+ */
+public class PacketCompression {
+
+    public static final int DEFAULT_THRESHOLD = 32000;
+
+    public static class ChannelStats {
+
+        public final String channel;
+        /**
+         * Packets larger than this many bytes are compressed
+         */
+        public volatile int threshold = DEFAULT_THRESHOLD;
+        public volatile int level = Deflater.DEFAULT_COMPRESSION;
+
+        public final AtomicLong deflated = new AtomicLong();
+        public final AtomicLong deflateIn = new AtomicLong();
+        public final AtomicLong deflateOut = new AtomicLong();
+        public final AtomicLong deflateNanos = new AtomicLong();
+
+        public final AtomicLong inflated = new AtomicLong();
+        public final AtomicLong inflateIn = new AtomicLong();
+        public final AtomicLong inflateOut = new AtomicLong();
+        public final AtomicLong inflateNanos = new AtomicLong();
+
+        public ChannelStats(String channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return Compressed size / uncompressed size of all packets deflated on this channel
+         */
+        public double deflateRatio() {
+            long in = deflateIn.get();
+            return in == 0 ? 1 : (double) deflateOut.get() / in;
+        }
+
+        public void reset() {
+            deflated.set(0);
+            deflateIn.set(0);
+            deflateOut.set(0);
+            deflateNanos.set(0);
+            inflated.set(0);
+            inflateIn.set(0);
+            inflateOut.set(0);
+            inflateNanos.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return channel + ": deflated "
+                    + deflated.get()
+                    + " ("
+                    + deflateIn.get()
+                    + " -> "
+                    + deflateOut.get()
+                    + " bytes, ratio "
+                    + String.format("%.3f", deflateRatio())
+                    + ", "
+                    + deflateNanos.get() / 1000000
+                    + "ms), inflated "
+                    + inflated.get()
+                    + " ("
+                    + inflateIn.get()
+                    + " -> "
+                    + inflateOut.get()
+                    + " bytes, "
+                    + inflateNanos.get() / 1000000
+                    + "ms)";
+        }
+    }
+
+    private static class Codec {
+
+        public final Deflater deflater = new Deflater();
+        public final Inflater inflater = new Inflater();
+        public byte[] scratch = new byte[0];
+
+        /**
+         * @return A copy of the readable bytes of a buffer without a backing array, eg. a direct buffer
+         */
+        public byte[] scratch(ByteBuffer buf, int len) {
+            if (scratch.length < len) scratch = new byte[len];
+            buf.duplicate().get(scratch, 0, len);
+            return scratch;
+        }
+    }
+
+    private static final ThreadLocal<Codec> codecs = ThreadLocal.withInitial(Codec::new);
+    private static final Map<String, ChannelStats> channels = new ConcurrentHashMap<>();
+
+    public static ChannelStats stats(String channel) {
+        return channels.computeIfAbsent(channel, ChannelStats::new);
+    }
+
+    public static Map<String, ChannelStats> allStats() {
+        return channels;
+    }
+
+    /**
+     * @param threshold Packets on this channel larger than this many bytes are compressed
+     */
+    public static void setThreshold(Object channelKey, int threshold) {
+        stats(PacketCustom.channelName(channelKey)).threshold = threshold;
+    }
+
+    /**
+     * @param level A {@link Deflater} compression level, 0-9
+     */
+    public static void setLevel(Object channelKey, int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9))
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        stats(PacketCustom.channelName(channelKey)).level = level;
+    }
+
+    /**
+     * Deflates the readable bytes of in into out starting at out's writer index. Nothing is written if the compressed
+     * data would be larger than maxLen.
+     *
+     * @param out A buffer with a backing array and at least maxLen writable bytes
+     * @return The number of bytes written, or -1 if the data did not compress to within maxLen bytes
+     */
+    public static int deflate(ChannelStats stats, ByteBuf in, ByteBuf out, int maxLen) {
+        int len = in.readableBytes();
+        if (in.hasArray())
+            return deflate(stats, null, in.array(), in.arrayOffset() + in.readerIndex(), len, out, maxLen);
+        return deflate(stats, in.nioBuffer(), null, 0, len, out, maxLen);
+    }
+
+    /**
+     * Deflates the remaining bytes of in, see {@link #deflate(ChannelStats, ByteBuf, ByteBuf, int)}
+     */
+    public static int deflate(ChannelStats stats, ByteBuffer in, ByteBuf out, int maxLen) {
+        if (in.hasArray())
+            return deflate(stats, null, in.array(), in.arrayOffset() + in.position(), in.remaining(), out, maxLen);
+        return deflate(stats, in, null, 0, in.remaining(), out, maxLen);
+    }
+
+    private static int deflate(ChannelStats stats, ByteBuffer in, byte[] array, int offset, int len, ByteBuf out,
+            int maxLen) {
+        long start = System.nanoTime();
+        Codec codec = codecs.get();
+        Deflater deflater = codec.deflater;
+        try {
+            if (array == null) {
+                array = codec.scratch(in, len);
+                offset = 0;
+            }
+            deflater.setLevel(stats.level);
+            deflater.setInput(array, offset, len);
+            deflater.finish();
+            int clen = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), maxLen);
+            if (!deflater.finished()) return -1;
+
+            out.writerIndex(out.writerIndex() + clen);
+            stats.deflated.incrementAndGet();
+            stats.deflateIn.addAndGet(len);
+            stats.deflateOut.addAndGet(clen);
+            return clen;
+        } finally {
+            deflater.reset();
+            stats.deflateNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Inflates the readable bytes of in into out starting at out's writer index.
+     *
+     * @param out A buffer with a backing array and at least len writable bytes
+     * @param len The uncompressed length
+     */
+    public static void inflate(ChannelStats stats, ByteBuf in, ByteBuf out, int len) throws DataFormatException {
+        long start = System.nanoTime();
+        Codec codec = codecs.get();
+        Inflater inflater = codec.inflater;
+        int clen = in.readableBytes();
+        try {
+            if (in.hasArray()) inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), clen);
+            else inflater.setInput(codec.scratch(in.nioBuffer(), clen), 0, clen);
+            int n = inflater.inflate(out.array(), out.arrayOffset() + out.writerIndex(), len);
+            if (n != len || !inflater.finished()) throw new DataFormatException(
+                    "Inflated " + n + " bytes, expected " + len + (stats == null ? "" : " on " + stats.channel));
+
+            in.skipBytes(clen);
+            out.writerIndex(out.writerIndex() + len);
+            if (stats != null) {
+                stats.inflated.incrementAndGet();
+                stats.inflateIn.addAndGet(clen);
+                stats.inflateOut.addAndGet(len);
+            }
+        } finally {
+            inflater.reset();
+            if (stats != null) stats.inflateNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package codechicken.lib.packet;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.player.EntityPlayer;
@@ -18,6 +21,7 @@ import net.minecraft.network.play.INetHandlerPlayClient;
 import net.minecraft.network.play.INetHandlerPlayServer;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.management.PlayerManager;
+import net.minecraft.world.ChunkCoordIntPair;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 import net.minecraftforge.fluids.Fluid;
@@ -28,7 +32,9 @@ import com.google.common.collect.Maps;
 
 import codechicken.lib.data.MCDataInput;
 import codechicken.lib.data.MCDataOutput;
+import codechicken.lib.data.NBTDeltaDictionary;
 import codechicken.lib.vec.BlockCoord;
+import codechicken.lib.world.ChunkWatchIndex;
 import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.ModContainer;
 import cpw.mods.fml.common.network.ByteBufUtils;
@@ -41,6 +47,7 @@ import cpw.mods.fml.common.network.internal.FMLProxyPacket;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -63,6 +70,27 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         public void handlePacket(PacketCustom packetCustom, EntityPlayerMP sender, INetHandlerPlayServer handler);
     }
 
+    /**
+     * A handler split into a decode stage, run on the network thread as soon as the packet arrives, and an apply stage,
+     * run on the tick thread at the start of the next tick by {@link PacketDispatchQueue}. Decompression and parsing
+     * happen in decode, so they never hold up the tick. The message returned by decode is passed between threads, so it
+     * should be immutable and must not refer to the packet.
+     */
+    public interface IAsyncPacketHandler<M> extends ICustomPacketHandler {
+
+        public M decode(PacketCustom packetCustom);
+    }
+
+    public interface IAsyncClientPacketHandler<M> extends IAsyncPacketHandler<M> {
+
+        public void apply(M message, Minecraft mc, INetHandlerPlayClient handler);
+    }
+
+    public interface IAsyncServerPacketHandler<M> extends IAsyncPacketHandler<M> {
+
+        public void apply(M message, EntityPlayerMP sender, INetHandlerPlayServer handler);
+    }
+
     public static AttributeKey<CustomInboundHandler> cclHandler = new AttributeKey<CustomInboundHandler>("ccl:handler");
 
     @ChannelHandler.Sharable
@@ -78,13 +106,37 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
 
         @Override
         protected void channelRead0(ChannelHandlerContext ctx, FMLProxyPacket msg) throws Exception {
-            handlers.get(ctx.channel().attr(NetworkRegistry.CHANNEL_SOURCE).get()).handle(
-                    ctx.channel().attr(NetworkRegistry.NET_HANDLER).get(),
-                    ctx.channel().attr(NetworkRegistry.FML_CHANNEL).get(),
-                    new PacketCustom(msg.payload()));
+            String channel = ctx.channel().attr(NetworkRegistry.FML_CHANNEL).get();
+            CustomHandler handler = handlers.get(ctx.channel().attr(NetworkRegistry.CHANNEL_SOURCE).get());
+            INetHandler netHandler = ctx.channel().attr(NetworkRegistry.NET_HANDLER).get();
+            PacketBatcher.split(msg.payload(), payload -> {
+                if (!PacketStats.enabled) {
+                    handler.handle(netHandler, channel, new PacketCustom(payload, channel));
+                    return;
+                }
+
+                int length = payload.readableBytes();
+                long start = System.nanoTime();
+                PacketCustom packet = new PacketCustom(payload, channel);
+                long decoded = System.nanoTime();
+                handler.handle(netHandler, channel, packet);
+
+                PacketStats.Counters counters = PacketStats
+                        .get(channel, packet.getType(), PacketStats.Direction.INBOUND);
+                counters.record(packet.rawLength, length);
+                counters.compressNanos.add(decoded - start);
+                counters.handlerNanos.add(System.nanoTime() - decoded);
+            });
         }
     }
 
+    /**
+     * @return The counters the apply stage of an asynchronous handler adds its time to, null if stats are disabled
+     */
+    private static PacketStats.Counters inboundCounters(String channel, PacketCustom packet) {
+        return PacketStats.enabled ? PacketStats.get(channel, packet.getType(), PacketStats.Direction.INBOUND) : null;
+    }
+
     private static interface CustomHandler {
 
         public void handle(INetHandler handler, String channel, PacketCustom packet) throws Exception;
@@ -124,6 +176,54 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         }
     }
 
+    public static class AsyncClientInboundHandler<M> implements CustomHandler {
+
+        private IAsyncClientPacketHandler<M> handler;
+
+        @SuppressWarnings("unchecked")
+        public AsyncClientInboundHandler(ICustomPacketHandler handler) {
+            this.handler = (IAsyncClientPacketHandler<M>) handler;
+        }
+
+        @Override
+        public void handle(INetHandler netHandler, String channel, PacketCustom packet) throws Exception {
+            if (!(netHandler instanceof INetHandlerPlayClient)) {
+                System.err.println("Invalid INetHandler for PacketCustom on channel: " + channel);
+                return;
+            }
+            M message = handler.decode(packet);
+            PacketDispatchQueue.enqueue(
+                    Side.CLIENT,
+                    inboundCounters(channel, packet),
+                    () -> handler.apply(message, Minecraft.getMinecraft(), (INetHandlerPlayClient) netHandler));
+        }
+    }
+
+    public static class AsyncServerInboundHandler<M> implements CustomHandler {
+
+        private IAsyncServerPacketHandler<M> handler;
+
+        @SuppressWarnings("unchecked")
+        public AsyncServerInboundHandler(ICustomPacketHandler handler) {
+            this.handler = (IAsyncServerPacketHandler<M>) handler;
+        }
+
+        @Override
+        public void handle(INetHandler netHandler, String channel, PacketCustom packet) throws Exception {
+            if (!(netHandler instanceof NetHandlerPlayServer)) {
+                System.err.println("Invalid INetHandler for PacketCustom on channel: " + channel);
+                return;
+            }
+            M message = handler.decode(packet);
+            NetHandlerPlayServer serverHandler = (NetHandlerPlayServer) netHandler;
+            EntityPlayerMP sender = serverHandler.playerEntity;
+            PacketDispatchQueue.enqueue(
+                    sender,
+                    inboundCounters(channel, packet),
+                    () -> handler.apply(message, sender, serverHandler));
+        }
+    }
+
     public static interface IHandshakeHandler {
 
         public void handshakeRecieved(NetHandlerPlayServer netHandler);
@@ -169,12 +269,25 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         return NetworkRegistry.INSTANCE.getChannel(channelName, side);
     }
 
+    /**
+     * @param handler An {@link IServerPacketHandler} or {@link IClientPacketHandler}, called on the network thread, or
+     *                an {@link IAsyncServerPacketHandler} or {@link IAsyncClientPacketHandler} to decode on the network
+     *                thread and apply on the tick thread
+     */
     public static void assignHandler(Object channelKey, ICustomPacketHandler handler) {
         String channelName = channelName(channelKey);
-        Side side = handler instanceof IServerPacketHandler ? Side.SERVER : Side.CLIENT;
+        Side side = handler instanceof IServerPacketHandler || handler instanceof IAsyncServerPacketHandler
+                ? Side.SERVER
+                : Side.CLIENT;
+        CustomHandler inbound;
+        if (handler instanceof IAsyncPacketHandler) {
+            PacketDispatchQueue.init();
+            inbound = side == Side.SERVER ? new AsyncServerInboundHandler<>(handler)
+                    : new AsyncClientInboundHandler<>(handler);
+        } else inbound = side == Side.SERVER ? new ServerInboundHandler(handler) : new ClientInboundHandler(handler);
+
         FMLEmbeddedChannel channel = getOrCreateChannel(channelName, side);
-        channel.attr(cclHandler).get().handlers
-                .put(side, side == Side.SERVER ? new ServerInboundHandler(handler) : new ClientInboundHandler(handler));
+        channel.attr(cclHandler).get().handlers.put(side, inbound);
     }
 
     public static void assignHandshakeHandler(Object channelKey, IHandshakeHandler handler) {
@@ -182,71 +295,114 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         channel.pipeline().addLast(new HandshakeInboundHandler(handler));
     }
 
+    /**
+     * If true, outbound packets are built in buffers from Netty's pooled allocator unless specified otherwise. See
+     * {@link #PacketCustom(Object, int, boolean)}
+     */
+    public static boolean usePooledBuffers = false;
+
+    private static final AtomicLong bytesAllocated = new AtomicLong();
+    private static final AtomicLong bytesSent = new AtomicLong();
+    private static final AtomicLong packetsSent = new AtomicLong();
+
     private ByteBuf byteBuf;
     private String channel;
     private int type;
 
+    private boolean pooled;
+    /**
+     * The exact bytes of the outbound packet, shared by every FMLProxyPacket created until more data is written
+     */
+    private byte[] payload;
+    private int payloadIndex = -1;
+    /**
+     * The uncompressed length of the payload, including the type byte
+     */
+    private int rawLength;
+    /**
+     * The string table of the channel an incoming packet was received on, if enabled
+     */
+    private StringTable strings;
+
     public PacketCustom(ByteBuf payload) {
+        this(payload, null);
+    }
+
+    /**
+     * @param channelName The channel the packet was received on, used for compression stats
+     */
+    PacketCustom(ByteBuf payload, String channelName) {
         byteBuf = payload;
+        strings = StringTable.forChannel(channelName);
 
         type = byteBuf.readUnsignedByte();
-        if (type > 0x80) decompress();
+        if (type > 0x80) decompress(channelName);
         type &= 0x7F;
+        rawLength = byteBuf.readableBytes() + 1;
     }
 
     public PacketCustom(Object channelKey, int type) {
+        this(channelKey, type, usePooledBuffers);
+    }
+
+    /**
+     * @param pooled If true, the packet is built in a buffer from Netty's pooled allocator. The buffer is returned to
+     *               the pool by the first call to {@link #toPacket()} (or any of the send methods), after which no more
+     *               data may be written. Pooled packets which are never sent must be released with {@link #release()}
+     */
+    public PacketCustom(Object channelKey, int type, boolean pooled) {
         if (type <= 0 || type >= 0x80)
             throw new IllegalArgumentException("Packet type: " + type + " is not within required 0 < t < 0x80");
 
         this.channel = channelName(channelKey);
         this.type = type;
-        byteBuf = Unpooled.buffer();
+        this.pooled = pooled;
+        byteBuf = allocate(256);
         byteBuf.writeByte(type);
     }
 
+    private ByteBuf allocate(int capacity) {
+        return pooled ? PooledByteBufAllocator.DEFAULT.heapBuffer(capacity) : Unpooled.buffer(capacity);
+    }
+
     /**
-     * Decompresses the remaining ByteBuf (after type has been read) using Snappy
+     * Decompresses the remaining ByteBuf (after type has been read) using Deflate
      */
-    private void decompress() {
-        Inflater inflater = new Inflater();
+    private void decompress(String channelName) {
         try {
             int len = byteBuf.readInt();
             ByteBuf out = Unpooled.buffer(len);
-            inflater.setInput(byteBuf.array(), byteBuf.readerIndex(), byteBuf.readableBytes());
-            inflater.inflate(out.array());
-            out.writerIndex(len);
+            PacketCompression
+                    .inflate(channelName == null ? null : PacketCompression.stats(channelName), byteBuf, out, len);
             byteBuf = out;
         } catch (Exception e) {
             throw new RuntimeException(e);
-        } finally {
-            inflater.end();
         }
     }
 
     /**
      * Compresses the payload ByteBuf after the type byte
      */
-    private void do_compress() {
-        Deflater deflater = new Deflater();
+    private void do_compress(PacketCompression.ChannelStats stats) {
+        ByteBuf out = null;
         try {
             byteBuf.readerIndex(1);
             int len = byteBuf.readableBytes();
-            deflater.setInput(byteBuf.array(), byteBuf.readerIndex(), len);
-            deflater.finish();
-            ByteBuf out = Unpooled.buffer(len + 5);
-            int clen = deflater.deflate(out.array(), 5, len);
-            if (clen >= len - 5 || !deflater.finished()) // not worth compressing, gets larger
-                return;
+            if (len <= 6) return;
+
+            out = allocate(len + 5);
+            out.writerIndex(5);
+            // not worth compressing if it doesn't get smaller
+            if (PacketCompression.deflate(stats, byteBuf, out, len - 6) < 0) return;
 
             out.setByte(0, type | 0x80);
             out.setInt(1, len);
-            out.writerIndex(clen + 5);
+            if (pooled) byteBuf.release();
             byteBuf = out;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            out = null;
         } finally {
+            if (out != null && pooled) out.release();
             byteBuf.readerIndex(0);
-            deflater.end();
         }
     }
 
@@ -325,6 +481,44 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         return this;
     }
 
+    /**
+     * Reserves len bytes for a bulk write, with a single bounds check
+     *
+     * @return A big endian view of the reserved bytes, or null if the buffer can't provide one
+     */
+    private ByteBuffer writeView(int len) {
+        byteBuf.ensureWritable(len);
+        if (byteBuf.nioBufferCount() != 1) return null;
+
+        int index = byteBuf.writerIndex();
+        byteBuf.writerIndex(index + len);
+        return byteBuf.nioBuffer(index, len);
+    }
+
+    @Override
+    public PacketCustom writeInts(int[] array, int offset, int length) {
+        ByteBuffer view = writeView(length * 4);
+        if (view != null) view.asIntBuffer().put(array, offset, length);
+        else MCDataOutput.super.writeInts(array, offset, length);
+        return this;
+    }
+
+    @Override
+    public PacketCustom writeShorts(short[] array, int offset, int length) {
+        ByteBuffer view = writeView(length * 2);
+        if (view != null) view.asShortBuffer().put(array, offset, length);
+        else MCDataOutput.super.writeShorts(array, offset, length);
+        return this;
+    }
+
+    @Override
+    public PacketCustom writeFloats(float[] array, int offset, int length) {
+        ByteBuffer view = writeView(length * 4);
+        if (view != null) view.asFloatBuffer().put(array, offset, length);
+        else MCDataOutput.super.writeFloats(array, offset, length);
+        return this;
+    }
+
     public PacketCustom writeString(String s) {
         ByteBufUtils.writeUTF8String(byteBuf, s);
         return this;
@@ -367,6 +561,19 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         return this;
     }
 
+    /**
+     * Writes compound as a delta from those previously sent with dict, see {@link NBTDeltaDictionary}
+     */
+    public PacketCustom writeNBTTagCompound(NBTTagCompound compound, NBTDeltaDictionary dict) {
+        dict.write(this, compound);
+        return this;
+    }
+
+    public PacketCustom writeItemStack(ItemStack stack, boolean large, NBTDeltaDictionary dict) {
+        dict.writeItemStack(this, stack, large);
+        return this;
+    }
+
     public PacketCustom writeFluidStack(FluidStack fluid) {
         if (fluid == null) {
             writeShort(-1);
@@ -432,14 +639,73 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         return new BlockCoord(readInt(), readInt(), readInt());
     }
 
+    /**
+     * Reads a coord into an existing BlockCoord, rather than allocating a new one
+     */
+    public BlockCoord readCoord(BlockCoord into) {
+        return into.set(readInt(), readInt(), readInt());
+    }
+
     public byte[] readByteArray(int length) {
         byte[] barray = new byte[length];
         byteBuf.readBytes(barray, 0, length);
         return barray;
     }
 
+    @Override
+    public PacketCustom readBytes(byte[] dst, int offset, int length) {
+        byteBuf.readBytes(dst, offset, length);
+        return this;
+    }
+
+    /**
+     * @return A big endian view of the next len bytes, which are skipped
+     */
+    private ByteBuffer readView(int len) {
+        ByteBuffer view = byteBuf.nioBuffer(byteBuf.readerIndex(), len);
+        byteBuf.skipBytes(len);
+        return view;
+    }
+
+    @Override
+    public PacketCustom readInts(int[] dst, int offset, int length) {
+        readView(length * 4).asIntBuffer().get(dst, offset, length);
+        return this;
+    }
+
+    @Override
+    public PacketCustom readShorts(short[] dst, int offset, int length) {
+        readView(length * 2).asShortBuffer().get(dst, offset, length);
+        return this;
+    }
+
+    @Override
+    public PacketCustom readFloats(float[] dst, int offset, int length) {
+        readView(length * 4).asFloatBuffer().get(dst, offset, length);
+        return this;
+    }
+
+    /**
+     * Reads length bytes into dst at its writer index
+     */
+    public PacketCustom readBytes(ByteBuf dst, int length) {
+        byteBuf.readBytes(dst, length);
+        return this;
+    }
+
+    /**
+     * Reads dst.remaining() bytes into dst
+     */
+    public PacketCustom readBytes(ByteBuffer dst) {
+        byteBuf.readBytes(dst);
+        return this;
+    }
+
+    /**
+     * If the channel has a {@link StringTable}, repeated strings return the same instance without decoding
+     */
     public String readString() {
-        return ByteBufUtils.readUTF8String(byteBuf);
+        return strings != null ? strings.read(byteBuf) : ByteBufUtils.readUTF8String(byteBuf);
     }
 
     public ItemStack readItemStack() {
@@ -464,6 +730,14 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         return ByteBufUtils.readTag(byteBuf);
     }
 
+    public NBTTagCompound readNBTTagCompound(NBTDeltaDictionary dict) {
+        return dict.read(this);
+    }
+
+    public ItemStack readItemStack(boolean large, NBTDeltaDictionary dict) {
+        return dict.readItemStack(this, large);
+    }
+
     public FluidStack readFluidStack() {
         Fluid fluid = FluidRegistry.getFluid(readShort());
         if (fluid == null) fluid = FluidRegistry.WATER;
@@ -471,22 +745,126 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         return new FluidStack(fluid, readVarInt(), readNBTTagCompound());
     }
 
+    /**
+     * The payload is copied once into an exactly sized array (FML sends the whole backing array of the buffer). Later
+     * calls without any further writes wrap the same array, so a packet may be sent many times without copying.
+     */
     public FMLProxyPacket toPacket() {
+        byte[] payload = payload();
+        return new FMLProxyPacket(Unpooled.wrappedBuffer(payload), channel);
+    }
+
+    /**
+     * @return The exact outbound payload, see {@link #toPacket()}
+     */
+    byte[] payload() {
         if (incoming()) throw new IllegalStateException("Tried to write an incoming packet");
+        if (payload == null || byteBuf.writerIndex() != payloadIndex) seal();
+
+        return payload;
+    }
+
+    /**
+     * Counts the payload of this packet as sent to one connection, for packets queued by {@link PacketBatcher}
+     */
+    void recordSent() {
+        recordSent(channel, getType(), rawLength, payload.length, 1);
+    }
+
+    /**
+     * Counts packet as sent to recipients connections. Packets which weren't built by a PacketCustom are counted under
+     * the type from their first byte.
+     */
+    static void recordSent(Packet packet, int recipients) {
+        if (recipients == 0 || !(packet instanceof FMLProxyPacket)) return;
+
+        FMLProxyPacket proxy = (FMLProxyPacket) packet;
+        ByteBuf buf = proxy.payload();
+        int length = buf.readableBytes();
+        if (length == 0) return;
+
+        int type = buf.getUnsignedByte(buf.readerIndex());
+        // compressed payloads store their uncompressed length (without the type byte) after the type
+        int rawLength = (type & 0x80) != 0 && length >= 5 ? buf.getInt(buf.readerIndex() + 1) + 1 : length;
+        recordSent(proxy.channel(), type & 0x7F, rawLength, length, recipients);
+    }
+
+    private static void recordSent(String channel, int type, int rawLength, int length, int recipients) {
+        packetsSent.addAndGet(recipients);
+        bytesSent.addAndGet((long) length * recipients);
+        if (PacketStats.enabled) PacketStats.get(channel, type, PacketStats.Direction.OUTBOUND)
+                .record(rawLength, length, recipients);
+    }
+
+    private void seal() {
+        if (byteBuf.refCnt() == 0) throw new IllegalStateException("Tried to send a released packet");
+        PacketCompression.ChannelStats stats = PacketCompression.stats(channel);
+        rawLength = byteBuf.readableBytes();
+        if (rawLength > stats.threshold || (type & 0x80) != 0) {
+            long start = System.nanoTime();
+            do_compress(stats);
+            if (PacketStats.enabled) PacketStats.get(channel, getType(), PacketStats.Direction.OUTBOUND).compressNanos
+                    .add(System.nanoTime() - start);
+        }
+
+        payload = new byte[byteBuf.readableBytes()];
+        byteBuf.getBytes(byteBuf.readerIndex(), payload);
+        bytesAllocated.addAndGet(payload.length + (pooled ? 0 : byteBuf.capacity()));
+
+        if (pooled) {
+            byteBuf.release();
+            byteBuf = Unpooled.wrappedBuffer(payload);
+            pooled = false;
+        }
+        payloadIndex = byteBuf.writerIndex();
+    }
+
+    /**
+     * Returns the buffer of a pooled packet that will not be sent to the pool. Has no effect on unpooled or already
+     * sent packets.
+     */
+    public void release() {
+        if (pooled && byteBuf.refCnt() > 0) byteBuf.release();
+    }
+
+    /**
+     * @return The number of bytes allocated for outbound packet buffers and payloads. Buffers from the pool are not
+     *         counted.
+     */
+    public static long bytesAllocated() {
+        return bytesAllocated.get();
+    }
+
+    /**
+     * @return The total payload size of all packets sent to each connection by the send methods, a broadcast counts
+     *         once per recipient
+     */
+    public static long bytesSent() {
+        return bytesSent.get();
+    }
 
-        if (byteBuf.readableBytes() > 32000 || (type & 0x80) != 0) do_compress();
+    public static long packetsSent() {
+        return packetsSent.get();
+    }
 
-        // FML packet impl returns the whole of the backing array, copy used portion of array to another ByteBuf
-        return new FMLProxyPacket(byteBuf.copy(), channel);
+    public static void resetCounters() {
+        bytesAllocated.set(0);
+        bytesSent.set(0);
+        packetsSent.set(0);
     }
 
     public void sendToPlayer(EntityPlayer player) {
+        if (player != null && PacketBatcher.queue((EntityPlayerMP) player, this, channel)) return;
         sendToPlayer(toPacket(), player);
     }
 
     public static void sendToPlayer(Packet packet, EntityPlayer player) {
         if (player == null) sendToClients(packet);
-        else((EntityPlayerMP) player).playerNetServerHandler.sendPacket(packet);
+        else {
+            PacketBatcher.beforeSend(packet, (EntityPlayerMP) player);
+            recordSent(packet, 1);
+            ((EntityPlayerMP) player).playerNetServerHandler.sendPacket(packet);
+        }
     }
 
     public void sendToClients() {
@@ -494,6 +872,8 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
     }
 
     public static void sendToClients(Packet packet) {
+        PacketBatcher.beforeSend(packet, null);
+        recordSent(packet, players().size());
         MinecraftServer.getServer().getConfigurationManager().sendPacketToAllPlayers(packet);
     }
 
@@ -502,6 +882,16 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
     }
 
     public static void sendToAllAround(Packet packet, double x, double y, double z, double range, int dim) {
+        PacketBatcher.beforeSend(packet, null);
+        int recipients = 0;
+        // the same test as ServerConfigurationManager.sendToAllNear
+        for (EntityPlayerMP player : players()) if (player.dimension == dim) {
+            double dx = x - player.posX;
+            double dy = y - player.posY;
+            double dz = z - player.posZ;
+            if (dx * dx + dy * dy + dz * dz < range * range) recipients++;
+        }
+        recordSent(packet, recipients);
         MinecraftServer.getServer().getConfigurationManager().sendToAllNear(x, y, z, range, dim, packet);
     }
 
@@ -510,18 +900,28 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
     }
 
     public static void sendToDimension(Packet packet, int dim) {
+        PacketBatcher.beforeSend(packet, null);
+        int recipients = 0;
+        for (EntityPlayerMP player : players()) if (player.dimension == dim) recipients++;
+        recordSent(packet, recipients);
         MinecraftServer.getServer().getConfigurationManager().sendPacketToAllPlayersInDimension(packet, dim);
     }
 
     public void sendToChunk(World world, int chunkX, int chunkZ) {
-        sendToChunk(toPacket(), world, chunkX, chunkZ);
+        List<EntityPlayerMP> players = getWatchers(world, chunkX, chunkZ);
+        if (PacketBatcher.canBatch(channel)) {
+            for (int i = 0; i < players.size(); i++) PacketBatcher.queue(players.get(i), this, channel);
+            return;
+        }
+        if (players.isEmpty()) return;
+
+        Packet packet = toPacket();
+        for (int i = 0; i < players.size(); i++) sendToPlayer(packet, players.get(i));
     }
 
     public static void sendToChunk(Packet packet, World world, int chunkX, int chunkZ) {
-        PlayerManager playerManager = ((WorldServer) world).getPlayerManager();
-        for (EntityPlayerMP player : (List<EntityPlayerMP>) MinecraftServer.getServer()
-                .getConfigurationManager().playerEntityList)
-            if (playerManager.isPlayerWatchingChunk(player, chunkX, chunkZ)) sendToPlayer(packet, player);
+        List<EntityPlayerMP> players = getWatchers(world, chunkX, chunkZ);
+        for (int i = 0; i < players.size(); i++) sendToPlayer(packet, players.get(i));
 
         /*
          * Commented until forge accepts access tranformer request PlayerInstance p = ((WorldServer)
@@ -530,6 +930,51 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
          */
     }
 
+    /**
+     * Sends this packet once to each player watching any of chunks
+     */
+    public void sendToChunks(World world, Collection<ChunkCoordIntPair> chunks) {
+        Collection<EntityPlayerMP> players = getWatchers(world, chunks);
+        if (PacketBatcher.canBatch(channel)) {
+            for (EntityPlayerMP player : players) PacketBatcher.queue(player, this, channel);
+            return;
+        }
+        if (players.isEmpty()) return;
+
+        Packet packet = toPacket();
+        for (EntityPlayerMP player : players) sendToPlayer(packet, player);
+    }
+
+    public static void sendToChunks(Packet packet, World world, Collection<ChunkCoordIntPair> chunks) {
+        for (EntityPlayerMP player : getWatchers(world, chunks)) sendToPlayer(packet, player);
+    }
+
+    /**
+     * @return The players watching the chunk, from the {@link ChunkWatchIndex} if it is initialised. The returned list
+     *         must not be modified
+     */
+    public static List<EntityPlayerMP> getWatchers(World world, int chunkX, int chunkZ) {
+        if (ChunkWatchIndex.isInitialised()) return ChunkWatchIndex.getWatchers(world, chunkX, chunkZ);
+
+        PlayerManager playerManager = ((WorldServer) world).getPlayerManager();
+        List<EntityPlayerMP> players = new ArrayList<>();
+        for (EntityPlayerMP player : (List<EntityPlayerMP>) MinecraftServer.getServer()
+                .getConfigurationManager().playerEntityList)
+            if (playerManager.isPlayerWatchingChunk(player, chunkX, chunkZ)) players.add(player);
+        return players;
+    }
+
+    public static Collection<EntityPlayerMP> getWatchers(World world, Collection<ChunkCoordIntPair> chunks) {
+        LinkedHashSet<EntityPlayerMP> players = new LinkedHashSet<>();
+        for (ChunkCoordIntPair chunk : chunks) players.addAll(getWatchers(world, chunk.chunkXPos, chunk.chunkZPos));
+        return players;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<EntityPlayerMP> players() {
+        return MinecraftServer.getServer().getConfigurationManager().playerEntityList;
+    }
+
     public void sendToOps() {
         sendToOps(toPacket());
     }
@@ -548,6 +993,7 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
 
     @SideOnly(Side.CLIENT)
     public static void sendToServer(Packet packet) {
+        recordSent(packet, 1);
         Minecraft.getMinecraft().getNetHandler().addToSendQueue(packet);
     }
 }
@@ -0,0 +1,120 @@
+package codechicken.lib.packet;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+
+import org.apache.logging.log4j.LogManager;
+
+import cpw.mods.fml.common.FMLCommonHandler;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.PlayerEvent;
+import cpw.mods.fml.common.gameevent.TickEvent;
+import cpw.mods.fml.common.network.FMLNetworkEvent;
+import cpw.mods.fml.relauncher.Side;
+
+/**
+ * Runs the apply stage of asynchronous packet handlers (see {@link PacketCustom.IAsyncPacketHandler}) on the tick
+ * thread of each side. Network threads add tasks to a lock-free queue, which is drained at the start of every tick.
+ * The time each task takes is added to the handler time of its packet's {@link PacketStats}.
+ * <p>
+ * A task which throws is logged and skipped. On the server, the player who sent the packet is disconnected, as their
+ * remaining packets can't be trusted. Tasks are dropped when their player logs out, the client disconnects or the
+ * server stops.
+ */
+public class PacketDispatchQueue {
+
+    private static class Task {
+
+        /**
+         * The sender of a server bound packet, null on the client
+         */
+        public final EntityPlayerMP player;
+        /**
+         * The inbound counters of the packet, null if stats are disabled
+         */
+        public final PacketStats.Counters counters;
+        public final Runnable run;
+
+        public Task(EntityPlayerMP player, PacketStats.Counters counters, Runnable run) {
+            this.player = player;
+            this.counters = counters;
+            this.run = run;
+        }
+    }
+
+    private static final ConcurrentLinkedQueue<Task> serverQueue = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentLinkedQueue<Task> clientQueue = new ConcurrentLinkedQueue<>();
+    private static boolean initialised;
+
+    static synchronized void init() {
+        if (initialised) return;
+        initialised = true;
+        FMLCommonHandler.instance().bus().register(new PacketDispatchQueue());
+    }
+
+    static void enqueue(Side side, PacketStats.Counters counters, Runnable task) {
+        (side == Side.SERVER ? serverQueue : clientQueue).add(new Task(null, counters, task));
+    }
+
+    static void enqueue(EntityPlayerMP sender, PacketStats.Counters counters, Runnable task) {
+        serverQueue.add(new Task(sender, counters, task));
+    }
+
+    /**
+     * Runs the tasks queued for side when called. Tasks added meanwhile are left for the next drain, so a flood of
+     * packets can't hold up the tick. Called automatically at the start of every tick
+     *
+     * @return The number of tasks run
+     */
+    public static int drain(Side side) {
+        ConcurrentLinkedQueue<Task> queue = side == Side.SERVER ? serverQueue : clientQueue;
+        int n = 0;
+        Task task;
+        for (int remaining = queue.size(); remaining > 0 && (task = queue.poll()) != null; remaining--) {
+            n++;
+            long start = task.counters == null ? 0 : System.nanoTime();
+            try {
+                task.run.run();
+            } catch (Exception e) {
+                EntityPlayerMP player = task.player;
+                LogManager.getLogger("CodeChickenLib").error(
+                        "Failed to handle packet" + (player == null ? "" : " from " + player.getCommandSenderName()),
+                        e);
+                if (player != null) {
+                    queue.removeIf(t -> t.player == player);
+                    player.playerNetServerHandler.kickPlayerFromServer("Failed to handle packet: " + e);
+                }
+            }
+            if (task.counters != null) task.counters.handlerNanos.add(System.nanoTime() - start);
+        }
+        return n;
+    }
+
+    /**
+     * Drops all tasks queued for side without running them
+     */
+    public static void clear(Side side) {
+        (side == Side.SERVER ? serverQueue : clientQueue).clear();
+    }
+
+    @SubscribeEvent
+    public void serverTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.START) drain(Side.SERVER);
+    }
+
+    @SubscribeEvent
+    public void clientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase == TickEvent.Phase.START) drain(Side.CLIENT);
+    }
+
+    @SubscribeEvent
+    public void playerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        serverQueue.removeIf(t -> t.player == event.player);
+    }
+
+    @SubscribeEvent
+    public void clientDisconnected(FMLNetworkEvent.ClientDisconnectionFromServerEvent event) {
+        clear(Side.CLIENT);
+    }
+}
@@ -0,0 +1,176 @@
+package codechicken.lib.packet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Traffic counters for PacketCustom, per channel, packet type and direction. Counters only use atomic adds, so they are
+ * cheap enough to leave on. Each counter also keeps the packets and bytes of the last {@link #WINDOW} seconds for
+ * current rates.
+ * <p>
+ * Outbound packets are counted once for each connection they are sent to by {@link PacketCustom#sendToPlayer} and
+ * friends, so broadcasts count once per recipient just as batched packets do. Packets sent by other means after
+ * {@link PacketCustom#toPacket()} are not counted. Inbound packets are counted after the handler returns, and include
+ * the handler time. For asynchronous handlers this is the decode stage, and the apply stage is added when
+ * {@link PacketDispatchQueue} runs it. Compressed packets count their uncompressed size as raw bytes.
+ */
+public class PacketStats {
+
+    public static boolean enabled = true;
+    public static final int WINDOW = 8;
+
+    public enum Direction {
+        INBOUND,
+        OUTBOUND
+    }
+
+    public static class Counters {
+
+        public final String channel;
+        public final int type;
+        public final Direction direction;
+
+        public final LongAdder packets = new LongAdder();
+        /**
+         * Uncompressed size
+         */
+        public final LongAdder rawBytes = new LongAdder();
+        /**
+         * Size on the wire
+         */
+        public final LongAdder bytes = new LongAdder();
+        public final LongAdder compressNanos = new LongAdder();
+        public final LongAdder handlerNanos = new LongAdder();
+
+        private final AtomicLongArray windowSecond = new AtomicLongArray(WINDOW);
+        private final AtomicLongArray windowPackets = new AtomicLongArray(WINDOW);
+        private final AtomicLongArray windowBytes = new AtomicLongArray(WINDOW);
+
+        public Counters(String channel, int type, Direction direction) {
+            this.channel = channel;
+            this.type = type;
+            this.direction = direction;
+        }
+
+        public void record(int rawLength, int length) {
+            record(rawLength, length, 1);
+        }
+
+        /**
+         * Records count packets of the same size, eg. one sent to count players
+         */
+        public void record(int rawLength, int length, int count) {
+            packets.add(count);
+            rawBytes.add((long) rawLength * count);
+            bytes.add((long) length * count);
+
+            long second = System.currentTimeMillis() / 1000;
+            int i = (int) (second % WINDOW);
+            long s = windowSecond.get(i);
+            // the first thread into a new second clears the bucket, a concurrent add may be lost
+            if (s != second && windowSecond.compareAndSet(i, s, second)) {
+                windowPackets.set(i, 0);
+                windowBytes.set(i, 0);
+            }
+            windowPackets.addAndGet(i, count);
+            windowBytes.addAndGet(i, (long) length * count);
+        }
+
+        private double rate(AtomicLongArray window) {
+            // average over the complete seconds in the window
+            long now = System.currentTimeMillis() / 1000;
+            long sum = 0;
+            for (int i = 0; i < WINDOW; i++) {
+                long s = windowSecond.get(i);
+                if (s < now && s > now - WINDOW) sum += window.get(i);
+            }
+            return sum / (double) (WINDOW - 1);
+        }
+
+        public double packetsPerSecond() {
+            return rate(windowPackets);
+        }
+
+        public double bytesPerSecond() {
+            return rate(windowBytes);
+        }
+
+        public void reset() {
+            packets.reset();
+            rawBytes.reset();
+            bytes.reset();
+            compressNanos.reset();
+            handlerNanos.reset();
+            for (int i = 0; i < WINDOW; i++) windowSecond.set(i, 0);
+        }
+    }
+
+    private static class ChannelCounters {
+
+        public final AtomicReferenceArray<Counters> inbound = new AtomicReferenceArray<>(0x80);
+        public final AtomicReferenceArray<Counters> outbound = new AtomicReferenceArray<>(0x80);
+    }
+
+    private static final Map<String, ChannelCounters> channels = new ConcurrentHashMap<>();
+
+    public static Counters get(String channel, int type, Direction direction) {
+        ChannelCounters c = channels.get(channel);
+        if (c == null) {
+            channels.putIfAbsent(channel, new ChannelCounters());
+            c = channels.get(channel);
+        }
+
+        AtomicReferenceArray<Counters> array = direction == Direction.INBOUND ? c.inbound : c.outbound;
+        Counters counters = array.get(type);
+        if (counters == null) {
+            array.compareAndSet(type, null, new Counters(channel, type, direction));
+            counters = array.get(type);
+        }
+        return counters;
+    }
+
+    /**
+     * @return All counters which have been used, in no particular order
+     */
+    public static List<Counters> all() {
+        List<Counters> list = new ArrayList<>();
+        for (ChannelCounters c : channels.values()) for (int i = 0; i < 0x80; i++) {
+            if (c.inbound.get(i) != null) list.add(c.inbound.get(i));
+            if (c.outbound.get(i) != null) list.add(c.outbound.get(i));
+        }
+        return list;
+    }
+
+    public static void reset() {
+        for (Counters counters : all()) counters.reset();
+    }
+
+    public static void dumpCSV(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println(
+                    "channel,type,direction,packets,raw_bytes,bytes,compress_ms,handler_ms,packets_per_s,bytes_per_s");
+            for (Counters c : all()) out.printf(
+                    Locale.ROOT,
+                    "%s,%d,%s,%d,%d,%d,%.3f,%.3f,%.2f,%.2f%n",
+                    c.channel,
+                    c.type,
+                    c.direction,
+                    c.packets.sum(),
+                    c.rawBytes.sum(),
+                    c.bytes.sum(),
+                    c.compressNanos.sum() / 1E6,
+                    c.handlerNanos.sum() / 1E6,
+                    c.packetsPerSecond(),
+                    c.bytesPerSecond());
+        }
+    }
+}
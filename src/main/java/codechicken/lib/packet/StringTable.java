@@ -0,0 +1,90 @@
+package codechicken.lib.packet;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Charsets;
+
+import cpw.mods.fml.common.network.ByteBufUtils;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A cache of recently read strings for a channel, so {@link PacketCustom#readString()} returns the same String instance
+ * for repeated strings (such as registry names) rather than decoding a new one every time. Enable per channel with
+ * {@link #enable(Object)}.
+ * <p>
+ * The table is direct mapped, a string evicts any other string with the same slot. Entries are immutable, so tables
+ * may be read by several network threads at once without locking.
+ */
+public class StringTable {
+
+    public static final int SIZE = 512;
+    /**
+     * Longer strings are unlikely to repeat and are always decoded
+     */
+    public static final int MAX_LENGTH = 64;
+
+    private static class Entry {
+
+        public final int hash;
+        public final byte[] utf8;
+        public final String string;
+
+        public Entry(int hash, byte[] utf8, String string) {
+            this.hash = hash;
+            this.utf8 = utf8;
+            this.string = string;
+        }
+
+        public boolean matches(ByteBuf buf, int index, int len) {
+            if (utf8.length != len) return false;
+            for (int i = 0; i < len; i++) if (utf8[i] != buf.getByte(index + i)) return false;
+            return true;
+        }
+    }
+
+    private static final Map<String, StringTable> channels = new ConcurrentHashMap<>();
+
+    public static void enable(Object channelKey) {
+        channels.computeIfAbsent(PacketCustom.channelName(channelKey), c -> new StringTable());
+    }
+
+    public static void disable(Object channelKey) {
+        channels.remove(PacketCustom.channelName(channelKey));
+    }
+
+    /**
+     * @return The table for channel, or null if it is not enabled
+     */
+    public static StringTable forChannel(String channel) {
+        return channel == null ? null : channels.get(channel);
+    }
+
+    private final Entry[] table = new Entry[SIZE];
+
+    /**
+     * Reads a string in the format of {@link ByteBufUtils#readUTF8String}
+     */
+    public String read(ByteBuf buf) {
+        int len = ByteBufUtils.readVarInt(buf, 2);
+        int index = buf.readerIndex();
+        if (len > MAX_LENGTH) {
+            String s = buf.toString(index, len, Charsets.UTF_8);
+            buf.skipBytes(len);
+            return s;
+        }
+
+        int hash = 1;
+        for (int i = 0; i < len; i++) hash = 31 * hash + buf.getByte(index + i);
+        int slot = (hash ^ hash >>> 16) & (SIZE - 1);
+
+        Entry e = table[slot];
+        if (e == null || e.hash != hash || !e.matches(buf, index, len)) {
+            byte[] utf8 = new byte[len];
+            buf.getBytes(index, utf8);
+            table[slot] = e = new Entry(hash, utf8, new String(utf8, Charsets.UTF_8));
+        }
+        buf.skipBytes(len);
+        return e.string;
+    }
+}
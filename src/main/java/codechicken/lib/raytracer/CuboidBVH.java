@@ -0,0 +1,249 @@
+package codechicken.lib.raytracer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import codechicken.lib.vec.Cuboid6;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * A bounding volume hierarchy over a list of IndexedCuboid6s for {@link RayTracer#rayTraceCuboids}. Build once for
+ * static selection boxes and reuse across traces, rebuilding if the cuboids change.
+ * <p>
+ * Nodes are stored depth first in flat arrays. The left child of an interior node immediately follows it.
+ */
+public class CuboidBVH {
+
+    public static final int LEAF_SIZE = 4;
+    /**
+     * Bounds are expanded by this much so the slab test never rejects a hit accepted by the exact face test
+     */
+    private static final double EPSILON = 1E-6;
+
+    public final List<IndexedCuboid6> cuboids;
+    private final IndexedCuboid6[] array;
+
+    /**
+     * minX, minY, minZ, maxX, maxY, maxZ for each node
+     */
+    private double[] bounds;
+    /**
+     * The index of the right child for interior nodes, -1 for leaves
+     */
+    private int[] right;
+    private int[] start;
+    private int[] count;
+    private int nodeCount;
+    /**
+     * Indices into cuboids, grouped by leaf
+     */
+    private final int[] order;
+    private int depth;
+
+    public CuboidBVH(List<IndexedCuboid6> cuboids) {
+        this.cuboids = cuboids;
+        array = cuboids.toArray(new IndexedCuboid6[0]);
+        int n = array.length;
+        order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+
+        int capacity = Math.max(1, 2 * n / LEAF_SIZE + 1);
+        bounds = new double[capacity * 6];
+        right = new int[capacity];
+        start = new int[capacity];
+        count = new int[capacity];
+
+        double[] centres = new double[n * 3];
+        for (int i = 0; i < n; i++) {
+            Cuboid6 c = array[i];
+            centres[i * 3] = c.min.x + c.max.x;
+            centres[i * 3 + 1] = c.min.y + c.max.y;
+            centres[i * 3 + 2] = c.min.z + c.max.z;
+        }
+        build(centres, 0, n, 1);
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    private int allocNode() {
+        if (nodeCount == right.length) {
+            int capacity = nodeCount * 2;
+            bounds = Arrays.copyOf(bounds, capacity * 6);
+            right = Arrays.copyOf(right, capacity);
+            start = Arrays.copyOf(start, capacity);
+            count = Arrays.copyOf(count, capacity);
+        }
+        return nodeCount++;
+    }
+
+    private void build(double[] centres, int from, int to, int level) {
+        int node = allocNode();
+        depth = Math.max(depth, level);
+
+        double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        double cMinX = minX, cMinY = minX, cMinZ = minX;
+        double cMaxX = maxX, cMaxY = maxX, cMaxZ = maxX;
+        for (int i = from; i < to; i++) {
+            int k = order[i];
+            Cuboid6 c = array[k];
+            minX = Math.min(minX, c.min.x);
+            minY = Math.min(minY, c.min.y);
+            minZ = Math.min(minZ, c.min.z);
+            maxX = Math.max(maxX, c.max.x);
+            maxY = Math.max(maxY, c.max.y);
+            maxZ = Math.max(maxZ, c.max.z);
+            cMinX = Math.min(cMinX, centres[k * 3]);
+            cMinY = Math.min(cMinY, centres[k * 3 + 1]);
+            cMinZ = Math.min(cMinZ, centres[k * 3 + 2]);
+            cMaxX = Math.max(cMaxX, centres[k * 3]);
+            cMaxY = Math.max(cMaxY, centres[k * 3 + 1]);
+            cMaxZ = Math.max(cMaxZ, centres[k * 3 + 2]);
+        }
+        int b = node * 6;
+        bounds[b] = minX - EPSILON;
+        bounds[b + 1] = minY - EPSILON;
+        bounds[b + 2] = minZ - EPSILON;
+        bounds[b + 3] = maxX + EPSILON;
+        bounds[b + 4] = maxY + EPSILON;
+        bounds[b + 5] = maxZ + EPSILON;
+
+        if (to - from <= LEAF_SIZE) {
+            right[node] = -1;
+            start[node] = from;
+            count[node] = to - from;
+            return;
+        }
+
+        double dx = cMaxX - cMinX, dy = cMaxY - cMinY, dz = cMaxZ - cMinZ;
+        int axis = dx >= dy && dx >= dz ? 0 : dy >= dz ? 1 : 2;
+        int mid = (from + to) >>> 1;
+        select(centres, axis, from, to - 1, mid);
+
+        build(centres, from, mid, level + 1);
+        right[node] = nodeCount;
+        build(centres, mid, to, level + 1);
+    }
+
+    /**
+     * Partially sorts order[from..to] so that the element at k has its final position along axis
+     */
+    private void select(double[] centres, int axis, int from, int to, int k) {
+        while (to > from) {
+            double pivot = centres[order[(from + to) >>> 1] * 3 + axis];
+            int i = from, j = to;
+            while (i <= j) {
+                while (centres[order[i] * 3 + axis] < pivot) i++;
+                while (centres[order[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            if (k <= j) to = j;
+            else if (k >= i) from = i;
+            else return;
+        }
+    }
+
+    /**
+     * Slab test of the segment start + t * (end - start), 0 <= t <= 1 against a node's bounds. The lower bound on t is
+     * relaxed slightly to match the tolerance of {@link Vector3#XZintercept} and friends.
+     *
+     * @return True if the segment intersects the node, with the entry t in tEntry[0]
+     */
+    private boolean intersects(int node, double sx, double sy, double sz, double ix, double iy, double iz,
+            double[] tEntry) {
+        int b = node * 6;
+        double tmin = -1E-5, tmax = 1;
+        if (Double.isInfinite(ix)) {
+            if (sx < bounds[b] || sx > bounds[b + 3]) return false;
+        } else {
+            double t1 = (bounds[b] - sx) * ix, t2 = (bounds[b + 3] - sx) * ix;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+        }
+        if (Double.isInfinite(iy)) {
+            if (sy < bounds[b + 1] || sy > bounds[b + 4]) return false;
+        } else {
+            double t1 = (bounds[b + 1] - sy) * iy, t2 = (bounds[b + 4] - sy) * iy;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+        }
+        if (Double.isInfinite(iz)) {
+            if (sz < bounds[b + 2] || sz > bounds[b + 5]) return false;
+        } else {
+            double t1 = (bounds[b + 2] - sz) * iz, t2 = (bounds[b + 5] - sz) * iz;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+        }
+        tEntry[0] = tmin;
+        return tmin <= tmax;
+    }
+
+    /**
+     * Visits candidate cuboids near to far, stopping once no remaining node can beat the tracer's current best hit. All
+     * scratch space comes from the tracer, so a BVH may be shared between threads.
+     */
+    void trace(RayTracer tracer, Vector3 startVec, Vector3 endVec) {
+        if (nodeCount == 0 || order.length == 0) return;
+
+        double sx = startVec.x, sy = startVec.y, sz = startVec.z;
+        double dx = endVec.x - sx, dy = endVec.y - sy, dz = endVec.z - sz;
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        double lenSq = dx * dx + dy * dy + dz * dz;
+
+        double[] tEntry = tracer.bvhEntry;
+        tracer.ensureBVHStack(depth + 1);
+        int[] stack = tracer.bvhStack;
+        double[] stackT = tracer.bvhStackT;
+        int sp = 0;
+        if (!intersects(0, sx, sy, sz, ix, iy, iz, tEntry)) return;
+        stack[sp] = 0;
+        stackT[sp++] = tEntry[0];
+
+        while (sp > 0) {
+            int node = stack[--sp];
+            double t = Math.max(stackT[sp], 0);
+            if (t * t * lenSq > tracer.bestDist() * (1 + 1E-9) + 1E-9) continue;
+
+            if (right[node] < 0) {
+                int end = start[node] + count[node];
+                for (int i = start[node]; i < end; i++) {
+                    int k = order[i];
+                    tracer.traceIndexed(startVec, endVec, array[k], k);
+                }
+                continue;
+            }
+
+            int l = node + 1, r = right[node];
+            boolean hitL = intersects(l, sx, sy, sz, ix, iy, iz, tEntry);
+            double tl = tEntry[0];
+            boolean hitR = intersects(r, sx, sy, sz, ix, iy, iz, tEntry);
+            double tr = tEntry[0];
+            if (hitL && hitR) {
+                // push the far child first so the near child is visited first
+                if (tl <= tr) {
+                    stack[sp] = r;
+                    stackT[sp++] = tr;
+                    stack[sp] = l;
+                    stackT[sp++] = tl;
+                } else {
+                    stack[sp] = l;
+                    stackT[sp++] = tl;
+                    stack[sp] = r;
+                    stackT[sp++] = tr;
+                }
+            } else if (hitL) {
+                stack[sp] = l;
+                stackT[sp++] = tl;
+            } else if (hitR) {
+                stack[sp] = r;
+                stackT[sp++] = tr;
+            }
+        }
+    }
+}
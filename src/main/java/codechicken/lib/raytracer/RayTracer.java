@@ -28,6 +28,15 @@ public class RayTracer {
     private int s_side;
     private IndexedCuboid6 c_cuboid;
 
+    private Vector3 c_vec = new Vector3();
+    private double c_dist;
+    private int c_side;
+    private int c_index;
+
+    double[] bvhEntry = new double[1];
+    int[] bvhStack = new int[0];
+    double[] bvhStackT = new double[0];
+
     private static ThreadLocal<RayTracer> t_inst = new ThreadLocal<RayTracer>();
 
     public static RayTracer instance() {
@@ -90,12 +99,15 @@ public class RayTracer {
         }
     }
 
-    public MovingObjectPosition rayTraceCuboid(Vector3 start, Vector3 end, Cuboid6 cuboid) {
+    private void traceCuboid(Vector3 start, Vector3 end, Cuboid6 cuboid) {
         s_dist = Double.MAX_VALUE;
         s_side = -1;
 
         for (int i = 0; i < 6; i++) traceSide(i, start, end, cuboid);
+    }
 
+    public MovingObjectPosition rayTraceCuboid(Vector3 start, Vector3 end, Cuboid6 cuboid) {
+        traceCuboid(start, end, cuboid);
         if (s_side < 0) return null;
 
         MovingObjectPosition mop = new MovingObjectPosition(0, 0, 0, s_side, s_vec.toVec3D());
@@ -103,26 +115,85 @@ public class RayTracer {
         return mop;
     }
 
-    public MovingObjectPosition rayTraceCuboids(Vector3 start, Vector3 end, List<IndexedCuboid6> cuboids) {
-        double c_dist = Double.MAX_VALUE;
-        MovingObjectPosition c_hit = null;
-
-        for (IndexedCuboid6 cuboid : cuboids) {
-            MovingObjectPosition mop = rayTraceCuboid(start, end, cuboid);
-            if (mop != null && s_dist < c_dist) {
-                mop = new ExtendedMOP(mop, cuboid.data, s_dist);
-                c_dist = s_dist;
-                c_hit = mop;
-                c_cuboid = cuboid;
-            }
+    private void resetClosest() {
+        c_dist = Double.MAX_VALUE;
+        c_side = -1;
+        c_index = -1;
+        c_cuboid = null;
+    }
+
+    double bestDist() {
+        return c_dist;
+    }
+
+    /**
+     * Traces cuboid, keeping it if it is closer than the current best. Equal distances are resolved to the lowest list
+     * index, matching a linear scan.
+     */
+    void traceIndexed(Vector3 start, Vector3 end, IndexedCuboid6 cuboid, int index) {
+        traceCuboid(start, end, cuboid);
+        if (s_side >= 0 && (s_dist < c_dist || s_dist == c_dist && index < c_index)) {
+            c_dist = s_dist;
+            c_side = s_side;
+            c_index = index;
+            c_vec.set(s_vec);
+            c_cuboid = cuboid;
+        }
+    }
+
+    void ensureBVHStack(int size) {
+        if (bvhStack.length < size) {
+            bvhStack = new int[size];
+            bvhStackT = new double[size];
         }
+    }
+
+    /**
+     * @return An ExtendedMOP for the closest hit, the only allocation of a trace
+     */
+    private MovingObjectPosition closestHit() {
+        if (c_side < 0) return null;
 
-        return c_hit;
+        ExtendedMOP mop = new ExtendedMOP(0, 0, 0, c_side, c_vec.toVec3D(), c_cuboid.data);
+        mop.typeOfHit = null;
+        mop.dist = c_dist;
+        return mop;
+    }
+
+    public MovingObjectPosition rayTraceCuboids(Vector3 start, Vector3 end, List<IndexedCuboid6> cuboids) {
+        resetClosest();
+        int i = 0;
+        for (IndexedCuboid6 cuboid : cuboids) traceIndexed(start, end, cuboid, i++);
+        return closestHit();
     }
 
     public MovingObjectPosition rayTraceCuboids(Vector3 start, Vector3 end, List<IndexedCuboid6> cuboids,
             BlockCoord pos, Block block) {
-        MovingObjectPosition mop = rayTraceCuboids(start, end, cuboids);
+        return toBlockHit(rayTraceCuboids(start, end, cuboids), pos, block);
+    }
+
+    /**
+     * Equivalent to rayTraceCuboids(start, end, bvh.cuboids), but only exactly tests cuboids whose bounds are reached
+     * before the closest hit found so far.
+     */
+    public MovingObjectPosition rayTraceCuboids(Vector3 start, Vector3 end, CuboidBVH bvh) {
+        resetClosest();
+        bvh.trace(this, start, end);
+        return closestHit();
+    }
+
+    /**
+     * Unlike the list variant, the hit cuboid is copied before being offset to set the block bounds, so the BVH remains
+     * valid.
+     */
+    public MovingObjectPosition rayTraceCuboids(Vector3 start, Vector3 end, CuboidBVH bvh, BlockCoord pos,
+            Block block) {
+        MovingObjectPosition mop = rayTraceCuboids(start, end, bvh);
+        if (mop != null) c_cuboid = new IndexedCuboid6(c_cuboid.data, c_cuboid);
+        return toBlockHit(mop, pos, block);
+    }
+
+    private MovingObjectPosition toBlockHit(MovingObjectPosition mop, BlockCoord pos, Block block) {
         if (mop != null) {
             mop.typeOfHit = MovingObjectType.BLOCK;
             mop.blockX = pos.x;
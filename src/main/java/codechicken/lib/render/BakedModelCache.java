@@ -0,0 +1,213 @@
+package codechicken.lib.render;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import codechicken.lib.render.uv.UVTransformation;
+import codechicken.lib.vec.Transformation;
+
+/**
+ * Memoises the transformed vertex data of a CCModel for a given Transformation and UVTransformation so that static
+ * geometry is transformed once rather than per vertex, per render. Baked models are stored as {@link PackedModel}s and
+ * evicted least recently used first once the cache is full.
+ * <p>
+ * Transformations are keyed by identity, so reuse instances such as {@link codechicken.lib.vec.Rotation#sideRotations}
+ * rather than constructing new ones for each render. The whole cache is invalidated when a texture atlas is stitched as
+ * baked uvs may come from icon coordinates. Caches are only weakly held for this, so unused caches can be collected.
+ * <p>
+ * Only geometry is baked. Colours, lighting and light coordinates are still computed by the render pipeline each
+ * render, so pass lighting operations as usual.
+ */
+public class BakedModelCache {
+
+    private static final Set<BakedModelCache> caches = Collections.newSetFromMap(new WeakHashMap<>());
+
+    static {
+        TextureUtils.addStitchListener(map -> {
+            List<BakedModelCache> live;
+            synchronized (caches) {
+                live = new ArrayList<>(caches);
+            }
+            for (BakedModelCache cache : live) cache.clear();
+        });
+    }
+
+    private static class Key {
+
+        public CCModel model;
+        public Transformation t;
+        public UVTransformation uvt;
+        public double u;
+        public double v;
+        public int hash;
+
+        public Key set(CCModel model, Transformation t, UVTransformation uvt, double u, double v) {
+            this.model = model;
+            this.t = t;
+            this.uvt = uvt;
+            this.u = u;
+            this.v = v;
+            int h = System.identityHashCode(model);
+            h = 31 * h + System.identityHashCode(t);
+            h = 31 * h + System.identityHashCode(uvt);
+            h = 31 * h + Double.hashCode(u);
+            hash = 31 * h + Double.hashCode(v);
+            return this;
+        }
+
+        public Key copy() {
+            return new Key().set(model, t, uvt, u, v);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return k.model == model && k.t == t && k.uvt == uvt && k.u == u && k.v == v;
+        }
+    }
+
+    public final int maxEntries;
+    private final LinkedHashMap<Key, PackedModel> cache;
+    private final Key probe = new Key();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public BakedModelCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        cache = new LinkedHashMap<Key, PackedModel>(16, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PackedModel> eldest) {
+                if (size() <= BakedModelCache.this.maxEntries) return false;
+                evictions++;
+                return true;
+            }
+        };
+        synchronized (caches) {
+            caches.add(this);
+        }
+    }
+
+    /**
+     * @param t   The transformation to apply, may be null
+     * @param uvt The uv transformation to apply after translating uvs by (u, v), may be null
+     * @return The model with t and uvt applied
+     */
+    public synchronized PackedModel get(CCModel model, Transformation t, UVTransformation uvt, double u, double v) {
+        PackedModel baked = cache.get(probe.set(model, t, uvt, u, v));
+        if (baked != null) {
+            hits++;
+            return baked;
+        }
+
+        misses++;
+        baked = bake(model, t, uvt, u, v);
+        cache.put(probe.copy(), baked);
+        return baked;
+    }
+
+    public PackedModel get(CCModel model, Transformation t, UVTransformation uvt) {
+        return get(model, t, uvt, 0, 0);
+    }
+
+    public PackedModel get(CCModel model, Transformation t, double u, double v) {
+        return get(model, t, null, u, v);
+    }
+
+    public static PackedModel bake(CCModel model, Transformation t, UVTransformation uvt, double u, double v) {
+        PackedModel baked = PackedModel.pack(model);
+        if (t != null && !t.isRedundant()) baked.apply(t);
+        if (u != 0 || v != 0) {
+            double[] uvs = baked.uvs;
+            for (int i = 0; i < uvs.length; i += 2) {
+                uvs[i] += u;
+                uvs[i + 1] += v;
+            }
+        }
+        if (uvt != null && !uvt.isRedundant()) baked.apply(uvt);
+        return baked;
+    }
+
+    /**
+     * Equivalent to model.render(state, t, new UVTranslation(u, v), ops) using the baked vertex data
+     */
+    public void render(CCRenderState state, CCModel model, Transformation t, double u, double v,
+            CCRenderState.IVertexOperation... ops) {
+        render(state, get(model, t, null, u, v), ops);
+    }
+
+    public void render(CCRenderState state, CCModel model, Transformation t, UVTransformation uvt,
+            CCRenderState.IVertexOperation... ops) {
+        render(state, get(model, t, uvt, 0, 0), ops);
+    }
+
+    public void render(CCModel model, Transformation t, double u, double v, CCRenderState.IVertexOperation... ops) {
+        render(CCRenderState.instance(), model, t, u, v, ops);
+    }
+
+    private static void render(CCRenderState state, PackedModel baked, CCRenderState.IVertexOperation... ops) {
+        state.setPipelineInstance(baked, 0, baked.vertexCount, ops);
+        state.renderInstance();
+    }
+
+    /**
+     * Removes all baked copies of model, call this if the model is modified
+     */
+    public synchronized void invalidate(CCModel model) {
+        cache.keySet().removeIf(k -> k.model == model);
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized void resetCounters() {
+        hits = misses = evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return "BakedModelCache(" + cache.size()
+                + "/"
+                + maxEntries
+                + ", hits: "
+                + hits
+                + ", misses: "
+                + misses
+                + ", evictions: "
+                + evictions
+                + ", hit rate: "
+                + (total == 0 ? 0 : hits * 100 / total)
+                + "%)";
+    }
+}
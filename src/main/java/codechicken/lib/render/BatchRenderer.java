@@ -0,0 +1,153 @@
+package codechicken.lib.render;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Renders batches of independent jobs in parallel. Each job is rendered on a pool thread using that thread's own
+ * CCRenderState, writing to a private VertexBuffer rather than the Tessellator. Once every job has completed the
+ * private buffers are appended to each job's target in list order, so the output is identical to rendering the jobs
+ * sequentially.
+ * <p>
+ * Operations must not be shared between jobs unless they are safe to use from several threads at once, as jobs run
+ * concurrently. The Transformations in this library are, as long as they (and the transformations in a
+ * TransformationList) aren't modified while jobs are running. Their lazily built matrices are published whole. Custom
+ * operations and transformations should be checked before sharing. Tasks are never run on the calling thread, so its
+ * CCRenderState is left untouched.
+ */
+public class BatchRenderer {
+
+    public static class Job {
+
+        public final CCRenderState.IVertexSource model;
+        public final int start;
+        public final int end;
+        public final CCRenderState.IVertexOperation[] ops;
+        /**
+         * The buffer to append output to, may be null if rendering directly to a sink
+         */
+        public final VertexBuffer target;
+        /**
+         * Optional callback to configure the render state (useNormals, baseColour, lightMatrix etc.) before rendering
+         */
+        public Consumer<CCRenderState> setup;
+
+        private final VertexBuffer output = new VertexBuffer();
+
+        public Job(CCRenderState.IVertexSource model, int start, int end, VertexBuffer target,
+                CCRenderState.IVertexOperation... ops) {
+            this.model = model;
+            this.start = start;
+            this.end = end;
+            this.target = target;
+            this.ops = ops;
+        }
+
+        public Job(CCModel model, VertexBuffer target, CCRenderState.IVertexOperation... ops) {
+            this(model, 0, model.verts.length, target, ops);
+        }
+
+        public Job setup(Consumer<CCRenderState> setup) {
+            this.setup = setup;
+            return this;
+        }
+
+        private void render() {
+            CCRenderState state = CCRenderState.instance();
+            VertexSink sink = state.sink;
+            output.reset();
+            state.resetInstance();
+            try {
+                state.sink = output;
+                if (setup != null) setup.accept(state);
+                state.setPipelineInstance(model, start, end, ops);
+                state.renderInstance();
+            } finally {
+                state.sink = sink;
+                state.resetInstance();
+            }
+        }
+    }
+
+    private static BatchRenderer defaultInstance;
+
+    public final ForkJoinPool pool;
+
+    public BatchRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public BatchRenderer(int parallelism) {
+        this(new ForkJoinPool(parallelism));
+    }
+
+    /**
+     * @return A shared renderer with one thread per core, leaving a core free for the main thread
+     */
+    public static synchronized BatchRenderer instance() {
+        if (defaultInstance == null)
+            defaultInstance = new BatchRenderer(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        return defaultInstance;
+    }
+
+    /**
+     * Renders all jobs and appends their output to their targets in list order. Blocks until complete.
+     */
+    public void render(List<Job> jobs) {
+        renderParallel(jobs);
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            if (job.target != null) job.target.append(job.output);
+            job.output.reset();
+        }
+    }
+
+    /**
+     * Renders all jobs and writes their output to sink in list order, eg. to the Tessellator. Output is also appended
+     * to the target of any job that has one.
+     */
+    public void render(List<Job> jobs, VertexSink sink) {
+        renderParallel(jobs);
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            job.output.replay(sink);
+            if (job.target != null) job.target.append(job.output);
+            job.output.reset();
+        }
+    }
+
+    private void renderParallel(List<Job> jobs) {
+        if (jobs.isEmpty()) return;
+
+        CountDownLatch latch = new CountDownLatch(jobs.size());
+        Throwable[] failure = new Throwable[1];
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            pool.execute(() -> {
+                try {
+                    job.render();
+                } catch (Throwable t) {
+                    synchronized (failure) {
+                        if (failure[0] == null) failure[0] = t;
+                        else failure[0].addSuppressed(t);
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while rendering batch", e);
+        }
+
+        synchronized (failure) {
+            if (failure[0] != null) throw new RuntimeException("Failed to render batch", failure[0]);
+        }
+    }
+}
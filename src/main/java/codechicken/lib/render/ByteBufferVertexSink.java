@@ -0,0 +1,106 @@
+package codechicken.lib.render;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes vertices into a direct ByteBuffer using the same interleaved layout as the Tessellator, 32 bytes per vertex:
+ * position (3 floats), uv (2 floats), colour (RGBA bytes), normal (3 signed bytes + padding) and brightness (int). The
+ * buffer grows as required and is always in native byte order.
+ */
+public class ByteBufferVertexSink implements VertexSink {
+
+    public static final int VERTEX_SIZE = 32;
+
+    private ByteBuffer buffer;
+    private int vertexCount;
+
+    private byte nx, ny, nz;
+    private byte r = -1, g = -1, b = -1, a = -1;
+    private int brightness;
+
+    public ByteBufferVertexSink() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity The initial capacity in vertices
+     */
+    public ByteBufferVertexSink(int capacity) {
+        buffer = ByteBuffer.allocateDirect(Math.max(capacity, 4) * VERTEX_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Writes into buffer from its current position. The buffer will be replaced by a larger one if it fills.
+     */
+    public ByteBufferVertexSink(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() >= bytes) return;
+
+        ByteBuffer old = buffer;
+        old.flip();
+        buffer = ByteBuffer.allocateDirect(Math.max(old.capacity() * 2, old.limit() + bytes))
+                .order(ByteOrder.nativeOrder());
+        buffer.put(old);
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return The buffer being written to. Its position is the end of the written data
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Clears the buffer for reuse
+     */
+    public ByteBufferVertexSink reset() {
+        buffer.clear();
+        vertexCount = 0;
+        return this;
+    }
+
+    @Override
+    public void startDrawing(int mode) {
+        reset();
+    }
+
+    @Override
+    public void setNormal(float x, float y, float z) {
+        nx = (byte) (x * 127);
+        ny = (byte) (y * 127);
+        nz = (byte) (z * 127);
+    }
+
+    @Override
+    public void setColour(int r, int g, int b, int a) {
+        this.r = (byte) r;
+        this.g = (byte) g;
+        this.b = (byte) b;
+        this.a = (byte) a;
+    }
+
+    @Override
+    public void setBrightness(int brightness) {
+        this.brightness = brightness;
+    }
+
+    @Override
+    public void addVertex(double x, double y, double z, double u, double v) {
+        ensureCapacity(VERTEX_SIZE);
+        ByteBuffer buffer = this.buffer;
+        buffer.putFloat((float) x).putFloat((float) y).putFloat((float) z);
+        buffer.putFloat((float) u).putFloat((float) v);
+        buffer.put(r).put(g).put(b).put(a);
+        buffer.put(nx).put(ny).put(nz).put((byte) 0);
+        buffer.putInt(brightness);
+        vertexCount++;
+    }
+}
@@ -915,9 +915,18 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
      * Generates a rotated copy of verts into this model
      */
     public CCModel apply(Transformation t, int srcpos, int destpos, int length) {
+        double[] xyz = new double[length * 3];
         for (int k = 0; k < length; k++) {
-            verts[destpos + k] = verts[srcpos + k].copy();
-            verts[destpos + k].vec.apply(t);
+            Vector3 vec = verts[srcpos + k].vec;
+            xyz[k * 3] = vec.x;
+            xyz[k * 3 + 1] = vec.y;
+            xyz[k * 3 + 2] = vec.z;
+        }
+        t.apply(xyz, 0, length);
+        for (int k = 0; k < length; k++) {
+            Vertex5 vert = verts[srcpos + k].copy();
+            vert.vec.set(xyz[k * 3], xyz[k * 3 + 1], xyz[k * 3 + 2]);
+            verts[destpos + k] = vert;
         }
 
         Vector3[] normals = normals();
@@ -1,7 +1,9 @@
 package codechicken.lib.render;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 
 import codechicken.lib.render.CCRenderState.IVertexOperation;
 import codechicken.lib.render.CCRenderState.VertexAttribute;
@@ -9,6 +11,11 @@ import codechicken.lib.render.CCRenderState.VertexAttribute;
 @SuppressWarnings("ForLoopReplaceableByForEach")
 public class CCRenderPipeline {
 
+    /**
+     * Maximum number of compiled pipelines cached per render state before the cache is flushed
+     */
+    public static int maxCompiledPipelines = 256;
+
     private final CCRenderState renderState;
     private final PipelineBuilder builder;
 
@@ -68,12 +75,113 @@ public class CCRenderPipeline {
         }
     }
 
+    /**
+     * Key for a compiled pipeline. Operations are compared by operation id, so new instances of the same operations
+     * (eg. a translation built for each render) share a pipeline. The signature encodes the render state flags and
+     * which attributes the bound model provides.
+     */
+    private static class PipelineKey {
+
+        public int[] ids = new int[8];
+        public int length;
+        public long signature;
+        public int hash;
+
+        public PipelineKey set(ArrayList<IVertexOperation> ops, long signature) {
+            if (ids.length < ops.size()) ids = new int[ops.size()];
+            length = ops.size();
+            int h = Long.hashCode(signature);
+            for (int i = 0; i < length; i++) {
+                int id = ops.get(i).operationID();
+                ids[i] = id;
+                h = 31 * h + id;
+            }
+            this.signature = signature;
+            hash = h;
+            return this;
+        }
+
+        public PipelineKey copy() {
+            PipelineKey key = new PipelineKey();
+            key.ids = Arrays.copyOf(ids, length);
+            key.length = length;
+            key.signature = signature;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PipelineKey)) return false;
+            PipelineKey k = (PipelineKey) o;
+            if (k.hash != hash || k.length != length || k.signature != signature) return false;
+            for (int i = 0; i < length; i++) if (k.ids[i] != ids[i]) return false;
+            return true;
+        }
+    }
+
+    /**
+     * The result of resolving a pipeline. Holds every operation that was loaded (including attributes pulled in as
+     * dependencies), the load result of each and the final execution order as indices into the load order. The first
+     * opCount operations are those passed to the pipeline, which are not kept as each render supplies its own.
+     */
+    private static class CompiledPipeline {
+
+        public final int opCount;
+        public final IVertexOperation[] loadOrder;
+        public final boolean[] loaded;
+        public final boolean[] active;
+        public final int[] executionOrder;
+
+        public CompiledPipeline(int opCount, IVertexOperation[] loadOrder, boolean[] loaded, boolean[] active,
+                int[] executionOrder) {
+            this.opCount = opCount;
+            this.loadOrder = loadOrder;
+            this.loaded = loaded;
+            this.active = active;
+            this.executionOrder = executionOrder;
+        }
+    }
+
     private final ArrayList<VertexAttribute> attribs = new ArrayList<>();
     private final ArrayList<IVertexOperation> ops = new ArrayList<>();
     private final ArrayList<PipelineNode> nodes = new ArrayList<>();
     private final ArrayList<IVertexOperation> sorted = new ArrayList<>();
     private PipelineNode loading;
 
+    private IVertexOperation[] execution = new IVertexOperation[0];
+    private int executionCount;
+
+    private boolean compiled;
+    private boolean replaying;
+    private final HashMap<PipelineKey, CompiledPipeline> compiledPipelines = new HashMap<>();
+    private final PipelineKey probe = new PipelineKey();
+    private boolean[] loadRecord = new boolean[16];
+
+    /**
+     * Enables compiled mode. When enabled, the resolved operation order is cached by the operation ids and the
+     * attribute signature of the bound model, so repeated renders of the same combination skip dependency resolution.
+     * Operations are still loaded each rebuild so they may pick up per-model references, if any operation loads
+     * differently to the cached result the pipeline is resolved from scratch.
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+        if (!compiled) compiledPipelines.clear();
+    }
+
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    public void clearCompiled() {
+        compiledPipelines.clear();
+    }
+
     public void setPipeline(IVertexOperation... ops) {
         this.ops.clear();
         for (int i = 0; i < ops.length; i++) this.ops.add(ops[i]);
@@ -89,11 +197,28 @@ public class CCRenderPipeline {
         for (int i = 0; i < attribs.size(); i++) attribs.get(i).active = false;
         attribs.clear();
         sorted.clear();
+        executionCount = 0;
     }
 
     public void rebuild() {
         if (ops.isEmpty() || this.renderState.model == null) return;
 
+        if (!compiled) {
+            resolve();
+            return;
+        }
+
+        long signature = signature();
+        CompiledPipeline pipeline = compiledPipelines.get(probe.set(ops, signature));
+        if (pipeline != null && replay(pipeline)) return;
+
+        PipelineKey key = probe.copy();
+        resolve();
+        if (compiledPipelines.size() >= maxCompiledPipelines) compiledPipelines.clear();
+        compiledPipelines.put(key, compile(key.length));
+    }
+
+    private void resolve() {
         // ensure enough nodes for all ops
         while (nodes.size() < this.renderState.operationCount()) nodes.add(new PipelineNode());
         unbuild();
@@ -110,21 +235,113 @@ public class CCRenderPipeline {
 
             if (op instanceof VertexAttribute) if (loaded) attribs.add((VertexAttribute) op);
             else((VertexAttribute) op).active = false;
+
+            if (compiled) recordLoad(i, loaded);
         }
 
         for (int i = 0; i < nodes.size(); i++) nodes.get(i).add();
+
+        if (execution.length < sorted.size()) execution = new IVertexOperation[sorted.size()];
+        executionCount = sorted.size();
+        for (int i = 0; i < executionCount; i++) execution[i] = sorted.get(i);
+    }
+
+    private void recordLoad(int i, boolean loaded) {
+        if (loadRecord.length <= i) loadRecord = Arrays.copyOf(loadRecord, i * 2);
+        loadRecord[i] = loaded;
+    }
+
+    private CompiledPipeline compile(int opCount) {
+        IVertexOperation[] loadOrder = ops.toArray(new IVertexOperation[0]);
+        boolean[] active = new boolean[loadOrder.length];
+        for (int i = 0; i < loadOrder.length; i++)
+            if (loadOrder[i] instanceof VertexAttribute) active[i] = ((VertexAttribute) loadOrder[i]).active;
+
+        int[] executionOrder = new int[executionCount];
+        for (int i = 0; i < executionCount; i++) {
+            int j = 0;
+            while (loadOrder[j] != execution[i]) j++;
+            executionOrder[i] = j;
+        }
+        boolean[] loaded = Arrays.copyOf(loadRecord, loadOrder.length);
+        // don't keep the caller's operations alive, replays use the ones passed to that render
+        Arrays.fill(loadOrder, 0, opCount, null);
+
+        return new CompiledPipeline(opCount, loadOrder, loaded, active, executionOrder);
+    }
+
+    /**
+     * Reloads the operations of a compiled pipeline without resolving dependencies.
+     *
+     * @return false if any operation loaded differently to when the pipeline was compiled
+     */
+    private boolean replay(CompiledPipeline pipeline) {
+        unbuild();
+        // the caller's operations come first, followed by the attributes they pulled in
+        int opCount = pipeline.opCount;
+        IVertexOperation[] loadOrder = pipeline.loadOrder;
+        for (int i = opCount; i < loadOrder.length; i++) ops.add(loadOrder[i]);
+
+        replaying = true;
+        try {
+            for (int i = 0; i < loadOrder.length; i++) if (ops.get(i).load(renderState) != pipeline.loaded[i]) {
+                while (ops.size() > opCount) ops.remove(ops.size() - 1);
+                return false;
+            }
+        } finally {
+            replaying = false;
+        }
+
+        for (int i = 0; i < loadOrder.length; i++) if (ops.get(i) instanceof VertexAttribute) {
+            VertexAttribute attrib = (VertexAttribute) ops.get(i);
+            attrib.active = pipeline.active[i];
+            if (pipeline.loaded[i]) attribs.add(attrib);
+        }
+
+        int[] executionOrder = pipeline.executionOrder;
+        if (execution.length < executionOrder.length) execution = new IVertexOperation[executionOrder.length];
+        for (int i = 0; i < executionOrder.length; i++) execution[i] = ops.get(executionOrder[i]);
+        executionCount = executionOrder.length;
+        return true;
+    }
+
+    /**
+     * Encodes the render state flags and the attributes provided by the current model. Two pipelines with the same
+     * operations and signature resolve to the same execution order.
+     */
+    private long signature() {
+        CCRenderState.IVertexSource model = renderState.model;
+        long sig = (renderState.useNormals ? 1 : 0) | (renderState.useColour ? 2 : 0)
+                | (renderState.computeLighting ? 4 : 0);
+        int bit = 3;
+        sig |= attributeBits(model, renderState.normalAttrib) << bit;
+        sig |= attributeBits(model, renderState.colourAttrib) << (bit += 2);
+        sig |= attributeBits(model, renderState.lightingAttrib) << (bit += 2);
+        sig |= attributeBits(model, renderState.sideAttrib) << (bit += 2);
+        sig |= attributeBits(model, renderState.lightCoordAttrib) << (bit += 2);
+        for (int i = 0; i < ops.size() && bit < 62; i++) if (ops.get(i) instanceof VertexAttribute)
+            sig |= attributeBits(model, (VertexAttribute<?>) ops.get(i)) << (bit += 2);
+
+        return sig;
+    }
+
+    private static long attributeBits(CCRenderState.IVertexSource model, VertexAttribute<?> attrib) {
+        return (model.hasAttribute(attrib) ? 1 : 0) | (model.getAttributes(attrib) != null ? 2 : 0);
     }
 
     public void addRequirement(int opRef) {
+        if (replaying) return;
         loading.deps.add(nodes.get(opRef));
     }
 
     public void addDependency(VertexAttribute attrib) {
+        if (replaying) return;
         loading.deps.add(nodes.get(attrib.operationID()));
         addAttribute(attrib);
     }
 
     public void addAttribute(VertexAttribute attrib) {
+        if (replaying) return;
         if (!attrib.active) {
             ops.add(attrib);
             attrib.active = true;
@@ -132,7 +349,9 @@ public class CCRenderPipeline {
     }
 
     public void operate() {
-        for (int i = 0; i < sorted.size(); i++) sorted.get(i).operate(renderState);
+        IVertexOperation[] execution = this.execution;
+        CCRenderState renderState = this.renderState;
+        for (int i = 0; i < executionCount; i++) execution[i].operate(renderState);
     }
 
     public PipelineBuilder builder() {
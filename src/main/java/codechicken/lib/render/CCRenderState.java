@@ -4,7 +4,6 @@ import java.util.ArrayList;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.OpenGlHelper;
-import net.minecraft.client.renderer.Tessellator;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.world.IBlockAccess;
 
@@ -94,6 +93,25 @@ public class CCRenderState {
         return vertexAttributes.size() - 1;
     }
 
+    private static int reserveVertexAttribute() {
+        return registerVertexAttribute(null);
+    }
+
+    /*
+     * The standard attributes are instantiated per thread, but share their indices so models populated on one thread
+     * can be rendered by the CCRenderState of another.
+     */
+    private static final int normalIndex = reserveVertexAttribute();
+    private static final int colourIndex = reserveVertexAttribute();
+    private static final int lightingIndex = reserveVertexAttribute();
+    private static final int sideIndex = reserveVertexAttribute();
+    private static final int lightCoordIndex = reserveVertexAttribute();
+    private static final int normalOperation = registerOperation();
+    private static final int colourOperation = registerOperation();
+    private static final int lightingOperation = registerOperation();
+    private static final int sideOperation = registerOperation();
+    private static final int lightCoordOperation = registerOperation();
+
     public static VertexAttribute<?> getAttribute(int index) {
         return vertexAttributes.get(index);
     }
@@ -106,14 +124,30 @@ public class CCRenderState {
      */
     public abstract static class VertexAttribute<T> implements IVertexOperation {
 
-        public final int attributeIndex = registerVertexAttribute(this);
-        private final int operationIndex = registerOperation();
+        public final int attributeIndex;
+        private final int operationIndex;
         /**
          * Set to true when the attrute is part of the pipeline. Should only be managed by CCRenderState when
          * constructing the pipeline
          */
         public boolean active = false;
 
+        public VertexAttribute() {
+            attributeIndex = registerVertexAttribute(this);
+            operationIndex = registerOperation();
+        }
+
+        /**
+         * Construct another instance of an existing attribute, sharing its attribute and operation index
+         */
+        protected VertexAttribute(int attributeIndex, int operationIndex) {
+            this.attributeIndex = attributeIndex;
+            this.operationIndex = operationIndex;
+            synchronized (vertexAttributes) {
+                if (vertexAttributes.get(attributeIndex) == null) vertexAttributes.set(attributeIndex, this);
+            }
+        }
+
         /**
          * Construct a new array for storage of vertex attrutes in a model
          */
@@ -169,6 +203,36 @@ public class CCRenderState {
         }
     }
 
+    /**
+     * A vertex source backed by primitive arrays rather than Vertex5 and attribute objects. getVertices may return
+     * null, positions are loaded into the render state by loadVertex and the standard attributes read the packed
+     * arrays directly.
+     */
+    public interface IPackedVertexSource extends IVertexSource {
+
+        int getVertexCount();
+
+        /**
+         * Load the position and uv of a vertex into vert
+         */
+        void loadVertex(int index, Vertex5 vert);
+
+        /**
+         * @return Normals packed as xyz triples, or null if not provided
+         */
+        float[] getPackedNormals();
+
+        /**
+         * @return The side of each light coordinate, or null if not provided
+         */
+        int[] getPackedLightSides();
+
+        /**
+         * @return The light coordinate weights packed as fa, fb, fc, fd quads, or null if not provided
+         */
+        float[] getPackedLightWeights();
+    }
+
     public static VertexAttribute<Vector3[]> normalAttrib() {
         return instances.get().normalAttrib;
     }
@@ -189,9 +253,10 @@ public class CCRenderState {
         return instances.get().lightingAttrib;
     }
 
-    public VertexAttribute<Vector3[]> normalAttrib = new VertexAttribute<>() {
+    public VertexAttribute<Vector3[]> normalAttrib = new VertexAttribute<>(normalIndex, normalOperation) {
 
         private Vector3[] normalRef;
+        private float[] packedRef;
 
         @Override
         public Vector3[] newArray(int length) {
@@ -201,7 +266,10 @@ public class CCRenderState {
         @Override
         public boolean load(CCRenderState state) {
             normalRef = state.model.getAttributes(this);
-            if (state.model.hasAttribute(this)) return normalRef != null;
+            packedRef = state.model instanceof IPackedVertexSource
+                    ? ((IPackedVertexSource) state.model).getPackedNormals()
+                    : null;
+            if (state.model.hasAttribute(this)) return normalRef != null || packedRef != null;
 
             if (state.model.hasAttribute(sideAttrib)) {
                 state.pipeline.addDependency(sideAttrib);
@@ -214,10 +282,13 @@ public class CCRenderState {
         @Override
         public void operate(CCRenderState state) {
             if (normalRef != null) state.setNormalInstance(normalRef[state.vertexIndex]);
-            else state.setNormalInstance(Rotation.axes[state.side]);
+            else if (packedRef != null) {
+                int i = state.vertexIndex * 3;
+                state.setNormalInstance(packedRef[i], packedRef[i + 1], packedRef[i + 2]);
+            } else state.setNormalInstance(Rotation.axes[state.side]);
         }
     };
-    public VertexAttribute<int[]> colourAttrib = new VertexAttribute<>() {
+    public VertexAttribute<int[]> colourAttrib = new VertexAttribute<>(colourIndex, colourOperation) {
 
         private int[] colourRef;
 
@@ -239,7 +310,7 @@ public class CCRenderState {
             else state.setColourInstance(state.baseColour);
         }
     };
-    public VertexAttribute<int[]> lightingAttrib = new VertexAttribute<>() {
+    public VertexAttribute<int[]> lightingAttrib = new VertexAttribute<>(lightingIndex, lightingOperation) {
 
         private int[] colourRef;
 
@@ -265,7 +336,7 @@ public class CCRenderState {
             state.setColourInstance(ColourRGBA.multiply(state.colour, colourRef[state.vertexIndex]));
         }
     };
-    public VertexAttribute<int[]> sideAttrib = new VertexAttribute<>() {
+    public VertexAttribute<int[]> sideAttrib = new VertexAttribute<>(sideIndex, sideOperation) {
 
         private int[] sideRef;
 
@@ -292,9 +363,11 @@ public class CCRenderState {
     /**
      * Uses the position of the lightmatrix to compute LC if not provided
      */
-    public VertexAttribute<LC[]> lightCoordAttrib = new VertexAttribute<>() {
+    public VertexAttribute<LC[]> lightCoordAttrib = new VertexAttribute<>(lightCoordIndex, lightCoordOperation) {
 
         private LC[] lcRef;
+        private int[] packedSides;
+        private float[] packedWeights;
         private final Vector3 vec = new Vector3(); // for computation
         private final Vector3 pos = new Vector3();
 
@@ -306,7 +379,13 @@ public class CCRenderState {
         @Override
         public boolean load(CCRenderState state) {
             lcRef = state.model.getAttributes(this);
-            if (state.model.hasAttribute(this)) return lcRef != null;
+            packedSides = null;
+            packedWeights = null;
+            if (state.model instanceof IPackedVertexSource) {
+                packedSides = ((IPackedVertexSource) state.model).getPackedLightSides();
+                packedWeights = ((IPackedVertexSource) state.model).getPackedLightWeights();
+            }
+            if (state.model.hasAttribute(this)) return lcRef != null || packedSides != null;
 
             pos.set(state.lightMatrix.pos.x, state.lightMatrix.pos.y, state.lightMatrix.pos.z);
             state.pipeline.addDependency(sideAttrib);
@@ -317,7 +396,15 @@ public class CCRenderState {
         @Override
         public void operate(CCRenderState state) {
             if (lcRef != null) state.lc.set(lcRef[state.vertexIndex]);
-            else state.lc.compute(vec.set(state.vert.vec).sub(pos), state.side);
+            else if (packedSides != null) {
+                int i = state.vertexIndex * 4;
+                state.lc.set(
+                        packedSides[state.vertexIndex],
+                        packedWeights[i],
+                        packedWeights[i + 1],
+                        packedWeights[i + 2],
+                        packedWeights[i + 3]);
+            } else state.lc.compute(vec.set(state.vert.vec).sub(pos), state.side);
         }
     };
 
@@ -347,6 +434,12 @@ public class CCRenderState {
     public boolean hasBrightness;
     public int brightness;
 
+    /**
+     * The destination for vertices written by this render state, by default the Tessellator. Replace with a
+     * ByteBufferVertexSink or CountingVertexSink to render off-heap or without a GL context.
+     */
+    public VertexSink sink = TessellatorVertexSink.instance;
+
     // attribute storage
     public int side;
     public LC lc = new LC();
@@ -396,7 +489,11 @@ public class CCRenderState {
     }
 
     public void setModelInstance(IVertexSource source) {
-        setModelInstance(source, 0, source.getVertices().length);
+        setModelInstance(
+                source,
+                0,
+                source instanceof IPackedVertexSource ? ((IPackedVertexSource) source).getVertexCount()
+                        : source.getVertices().length);
     }
 
     @Deprecated
@@ -435,6 +532,11 @@ public class CCRenderState {
     }
 
     public void renderInstance() {
+        if (model instanceof IPackedVertexSource) {
+            renderPackedInstance((IPackedVertexSource) model);
+            return;
+        }
+
         Vertex5[] verts = model.getVertices();
         for (vertexIndex = firstVertexIndex; vertexIndex < lastVertexIndex; vertexIndex++) {
             model.prepareVertex(this);
@@ -444,6 +546,15 @@ public class CCRenderState {
         }
     }
 
+    private void renderPackedInstance(IPackedVertexSource model) {
+        for (vertexIndex = firstVertexIndex; vertexIndex < lastVertexIndex; vertexIndex++) {
+            model.prepareVertex(this);
+            model.loadVertex(vertexIndex, vert);
+            runPipelineInstance();
+            writeVertInstance();
+        }
+    }
+
     @Deprecated
     public static void render() {
         instance().renderInstance();
@@ -459,14 +570,15 @@ public class CCRenderState {
     }
 
     public void writeVertInstance() {
-        if (hasNormal) Tessellator.instance.setNormal((float) normal.x, (float) normal.y, (float) normal.z);
-        if (hasColour) Tessellator.instance.setColorRGBA(
+        VertexSink sink = this.sink;
+        if (hasNormal) sink.setNormal((float) normal.x, (float) normal.y, (float) normal.z);
+        if (hasColour) sink.setColour(
                 colour >>> 24,
                 colour >> 16 & 0xFF,
                 colour >> 8 & 0xFF,
                 alphaOverride >= 0 ? alphaOverride : colour & 0xFF);
-        if (hasBrightness) Tessellator.instance.setBrightness(brightness);
-        Tessellator.instance.addVertexWithUV(vert.vec.x, vert.vec.y, vert.vec.z, vert.uv.u, vert.uv.v);
+        if (hasBrightness) sink.setBrightness(brightness);
+        sink.addVertex(vert.vec.x, vert.vec.y, vert.vec.z, vert.uv.u, vert.uv.v);
     }
 
     @Deprecated
@@ -569,13 +681,14 @@ public class CCRenderState {
     }
 
     public void startDrawingInstance(int mode) {
-        Tessellator.instance.startDrawing(mode);
-        if (hasColour) Tessellator.instance.setColorRGBA(
+        VertexSink sink = this.sink;
+        sink.startDrawing(mode);
+        if (hasColour) sink.setColour(
                 colour >>> 24,
                 colour >> 16 & 0xFF,
                 colour >> 8 & 0xFF,
                 alphaOverride >= 0 ? alphaOverride : colour & 0xFF);
-        if (hasBrightness) Tessellator.instance.setBrightness(brightness);
+        if (hasBrightness) sink.setBrightness(brightness);
     }
 
     @Deprecated
@@ -584,10 +697,21 @@ public class CCRenderState {
     }
 
     public static void draw() {
-        Tessellator.instance.draw();
+        instance().drawInstance();
     }
 
     public void drawInstance() {
-        Tessellator.instance.draw();
+        sink.draw();
+    }
+
+    public void setSinkInstance(VertexSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Sets the sink for the current thread
+     */
+    public static void setSink(VertexSink sink) {
+        instance().setSinkInstance(sink);
     }
 }
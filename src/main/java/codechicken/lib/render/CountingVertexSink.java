@@ -0,0 +1,38 @@
+package codechicken.lib.render;
+
+/**
+ * Discards vertices, counting them and keeping a checksum of their positions. Useful for benchmarking the pipeline
+ * without a display, the checksum prevents the JIT from eliminating the work.
+ */
+public class CountingVertexSink implements VertexSink {
+
+    public long vertexCount;
+    public long drawCount;
+    public double checksum;
+
+    public CountingVertexSink reset() {
+        vertexCount = drawCount = 0;
+        checksum = 0;
+        return this;
+    }
+
+    @Override
+    public void draw() {
+        drawCount++;
+    }
+
+    @Override
+    public void setNormal(float x, float y, float z) {}
+
+    @Override
+    public void setColour(int r, int g, int b, int a) {}
+
+    @Override
+    public void setBrightness(int brightness) {}
+
+    @Override
+    public void addVertex(double x, double y, double z, double u, double v) {
+        vertexCount++;
+        checksum += x + y + z + u + v;
+    }
+}
@@ -0,0 +1,279 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import codechicken.lib.lighting.LC;
+import codechicken.lib.render.uv.UV;
+import codechicken.lib.render.uv.UVTransformation;
+import codechicken.lib.util.Copyable;
+import codechicken.lib.vec.Rotation;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * A struct-of-arrays equivalent of CCModel. Vertex data is stored in contiguous primitive arrays instead of an object
+ * per vertex, which is far kinder to the cache and GC for large models such as QB imports and combined models.
+ * <p>
+ * Optional attributes are null when not provided by the model.
+ */
+@SuppressWarnings("ForLoopReplaceableByForEach")
+public class PackedModel implements CCRenderState.IPackedVertexSource, Copyable<PackedModel> {
+
+    public final int vertexMode;
+    public final int vp;
+    public final int vertexCount;
+
+    /**
+     * xyz for each vertex
+     */
+    public double[] positions;
+    /**
+     * uv for each vertex
+     */
+    public double[] uvs;
+    /**
+     * Texture index for each vertex, see {@link UV#tex}
+     */
+    public int[] texIndices;
+    /**
+     * Normal xyz for each vertex
+     */
+    public float[] normals;
+    public int[] colours;
+    public int[] lighting;
+    public int[] sides;
+    public int[] lightSides;
+    /**
+     * fa, fb, fc, fd for each vertex, see {@link LC}
+     */
+    public float[] lightWeights;
+
+    private final UV uv = new UV();
+
+    public PackedModel(int vertexMode, int vertexCount) {
+        if (vertexMode != 7 && vertexMode != 4)
+            throw new IllegalArgumentException("Models must be GL_QUADS or GL_TRIANGLES");
+
+        this.vertexMode = vertexMode;
+        this.vertexCount = vertexCount;
+        vp = vertexMode == 7 ? 4 : 3;
+        positions = new double[vertexCount * 3];
+        uvs = new double[vertexCount * 2];
+        texIndices = new int[vertexCount];
+    }
+
+    /**
+     * Packs a CCModel. Vertex positions, uvs and the standard attributes are copied, other attributes are dropped.
+     */
+    public static PackedModel pack(CCModel model) {
+        Vertex5[] verts = model.verts;
+        PackedModel packed = new PackedModel(model.vertexMode, verts.length);
+        for (int i = 0; i < verts.length; i++) {
+            Vertex5 vert = verts[i];
+            packed.positions[i * 3] = vert.vec.x;
+            packed.positions[i * 3 + 1] = vert.vec.y;
+            packed.positions[i * 3 + 2] = vert.vec.z;
+            packed.uvs[i * 2] = vert.uv.u;
+            packed.uvs[i * 2 + 1] = vert.uv.v;
+            packed.texIndices[i] = vert.uv.tex;
+        }
+
+        Vector3[] normals = model.getAttributes(CCRenderState.normalAttrib());
+        if (normals != null) {
+            packed.normals = new float[verts.length * 3];
+            for (int i = 0; i < verts.length; i++) if (normals[i] != null) {
+                packed.normals[i * 3] = (float) normals[i].x;
+                packed.normals[i * 3 + 1] = (float) normals[i].y;
+                packed.normals[i * 3 + 2] = (float) normals[i].z;
+            }
+        }
+
+        LC[] lcs = model.getAttributes(CCRenderState.lightCoordAttrib());
+        if (lcs != null) {
+            packed.lightSides = new int[verts.length];
+            packed.lightWeights = new float[verts.length * 4];
+            for (int i = 0; i < verts.length; i++) if (lcs[i] != null) {
+                LC lc = lcs[i];
+                packed.lightSides[i] = lc.side;
+                packed.lightWeights[i * 4] = lc.fa;
+                packed.lightWeights[i * 4 + 1] = lc.fb;
+                packed.lightWeights[i * 4 + 2] = lc.fc;
+                packed.lightWeights[i * 4 + 3] = lc.fd;
+            }
+        }
+
+        packed.colours = copyOf(model.getAttributes(CCRenderState.colourAttrib()));
+        packed.lighting = copyOf(model.getAttributes(CCRenderState.lightingAttrib()));
+        packed.sides = copyOf(model.getAttributes(CCRenderState.sideAttrib()));
+        return packed;
+    }
+
+    /**
+     * Packs and combines a collection of models into a single packed model
+     */
+    public static PackedModel combine(Collection<CCModel> models) {
+        CCModel model = CCModel.combine(models);
+        return model == null ? null : pack(model);
+    }
+
+    /**
+     * @return A CCModel with the same vertices and attributes as this model
+     */
+    public CCModel unpack() {
+        CCModel model = CCModel.newModel(vertexMode, vertexCount);
+        for (int i = 0; i < vertexCount; i++) model.verts[i] = new Vertex5(
+                positions[i * 3],
+                positions[i * 3 + 1],
+                positions[i * 3 + 2],
+                uvs[i * 2],
+                uvs[i * 2 + 1],
+                texIndices[i]);
+
+        if (normals != null) {
+            Vector3[] n = model.getOrAllocate(CCRenderState.normalAttrib());
+            for (int i = 0; i < vertexCount; i++)
+                n[i] = new Vector3(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+        }
+        if (lightSides != null) {
+            LC[] lcs = model.getOrAllocate(CCRenderState.lightCoordAttrib());
+            for (int i = 0; i < vertexCount; i++) lcs[i] = new LC(
+                    lightSides[i],
+                    lightWeights[i * 4],
+                    lightWeights[i * 4 + 1],
+                    lightWeights[i * 4 + 2],
+                    lightWeights[i * 4 + 3]);
+        }
+        if (colours != null)
+            System.arraycopy(colours, 0, model.getOrAllocate(CCRenderState.colourAttrib()), 0, vertexCount);
+        if (lighting != null)
+            System.arraycopy(lighting, 0, model.getOrAllocate(CCRenderState.lightingAttrib()), 0, vertexCount);
+        if (sides != null)
+            System.arraycopy(sides, 0, model.getOrAllocate(CCRenderState.sideAttrib()), 0, vertexCount);
+
+        return model;
+    }
+
+    private static int[] copyOf(int[] a) {
+        return a == null ? null : a.clone();
+    }
+
+    public PackedModel apply(Transformation t) {
+        return apply(t, 0, vertexCount);
+    }
+
+    /**
+     * Transforms vertices start through start+length-1 in place. Models with sides but no normals are given the normal
+     * of each side first, as the render pipeline would derive them, so the transformed normals are kept.
+     */
+    public PackedModel apply(Transformation t, int start, int length) {
+        if (normals == null && sides != null) {
+            normals = new float[vertexCount * 3];
+            for (int i = 0; i < vertexCount; i++) {
+                Vector3 axis = Rotation.axes[sides[i]];
+                normals[i * 3] = (float) axis.x;
+                normals[i * 3 + 1] = (float) axis.y;
+                normals[i * 3 + 2] = (float) axis.z;
+            }
+        }
+        t.apply(positions, start, length);
+        if (normals != null) t.applyN(normals, start, length);
+        return this;
+    }
+
+    public PackedModel apply(UVTransformation uvt) {
+        double[] uvs = this.uvs;
+        for (int i = 0; i < vertexCount; i++) {
+            uv.set(uvs[i * 2], uvs[i * 2 + 1], texIndices[i]);
+            uvt.apply(uv);
+            uvs[i * 2] = uv.u;
+            uvs[i * 2 + 1] = uv.v;
+            texIndices[i] = uv.tex;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the colour of every vertex
+     */
+    public PackedModel setColour(int c) {
+        if (colours == null) colours = new int[vertexCount];
+        Arrays.fill(colours, c);
+        return this;
+    }
+
+    @Override
+    public PackedModel copy() {
+        PackedModel model = new PackedModel(vertexMode, vertexCount);
+        System.arraycopy(positions, 0, model.positions, 0, positions.length);
+        System.arraycopy(uvs, 0, model.uvs, 0, uvs.length);
+        System.arraycopy(texIndices, 0, model.texIndices, 0, texIndices.length);
+        if (normals != null) model.normals = normals.clone();
+        model.colours = copyOf(colours);
+        model.lighting = copyOf(lighting);
+        model.sides = copyOf(sides);
+        model.lightSides = copyOf(lightSides);
+        if (lightWeights != null) model.lightWeights = lightWeights.clone();
+        return model;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public void loadVertex(int index, Vertex5 vert) {
+        int p = index * 3;
+        int t = index * 2;
+        vert.vec.set(positions[p], positions[p + 1], positions[p + 2]);
+        vert.uv.set(uvs[t], uvs[t + 1], texIndices[index]);
+    }
+
+    @Override
+    public float[] getPackedNormals() {
+        return normals;
+    }
+
+    @Override
+    public int[] getPackedLightSides() {
+        return lightSides;
+    }
+
+    @Override
+    public float[] getPackedLightWeights() {
+        return lightWeights;
+    }
+
+    /**
+     * Packed models have no Vertex5 array, vertices are loaded by {@link #loadVertex(int, Vertex5)}
+     */
+    @Override
+    public Vertex5[] getVertices() {
+        return null;
+    }
+
+    @Override
+    public <T> T getAttributes(CCRenderState.VertexAttribute<T> attr) {
+        // attributes are instanced per render state, so compare indices as CCModel does
+        int index = attr.attributeIndex;
+        if (index == CCRenderState.colourAttrib().attributeIndex) return (T) colours;
+        if (index == CCRenderState.lightingAttrib().attributeIndex) return (T) lighting;
+        if (index == CCRenderState.sideAttrib().attributeIndex) return (T) sides;
+        return null;
+    }
+
+    @Override
+    public boolean hasAttribute(CCRenderState.VertexAttribute<?> attr) {
+        int index = attr.attributeIndex;
+        if (index == CCRenderState.normalAttrib().attributeIndex) return normals != null;
+        if (index == CCRenderState.colourAttrib().attributeIndex) return colours != null;
+        if (index == CCRenderState.lightingAttrib().attributeIndex) return lighting != null;
+        if (index == CCRenderState.sideAttrib().attributeIndex) return sides != null;
+        if (index == CCRenderState.lightCoordAttrib().attributeIndex) return lightSides != null;
+        return false;
+    }
+
+    @Override
+    public void prepareVertex(CCRenderState state) {}
+}
@@ -0,0 +1,41 @@
+package codechicken.lib.render;
+
+import net.minecraft.client.renderer.Tessellator;
+
+/**
+ * Writes vertices to Tessellator.instance
+ */
+public class TessellatorVertexSink implements VertexSink {
+
+    public static final TessellatorVertexSink instance = new TessellatorVertexSink();
+
+    @Override
+    public void startDrawing(int mode) {
+        Tessellator.instance.startDrawing(mode);
+    }
+
+    @Override
+    public void draw() {
+        Tessellator.instance.draw();
+    }
+
+    @Override
+    public void setNormal(float x, float y, float z) {
+        Tessellator.instance.setNormal(x, y, z);
+    }
+
+    @Override
+    public void setColour(int r, int g, int b, int a) {
+        Tessellator.instance.setColorRGBA(r, g, b, a);
+    }
+
+    @Override
+    public void setBrightness(int brightness) {
+        Tessellator.instance.setBrightness(brightness);
+    }
+
+    @Override
+    public void addVertex(double x, double y, double z, double u, double v) {
+        Tessellator.instance.addVertexWithUV(x, y, z, u, v);
+    }
+}
@@ -32,22 +32,40 @@ public class TextureUtils {
         public int atlasIndex();
     }
 
+    /**
+     * Notified after an atlas has been stitched, any cached icon coordinates for that atlas are no longer valid
+     */
+    public static interface IStitchListener {
+
+        public void textureStitched(TextureMap map);
+    }
+
     static {
         MinecraftForge.EVENT_BUS.register(new TextureUtils());
     }
 
     private static ArrayList<IIconSelfRegister> iconRegistrars = new ArrayList<TextureUtils.IIconSelfRegister>();
+    private static ArrayList<IStitchListener> stitchListeners = new ArrayList<TextureUtils.IStitchListener>();
 
     public static void addIconRegistrar(IIconSelfRegister registrar) {
         iconRegistrars.add(registrar);
     }
 
+    public static void addStitchListener(IStitchListener listener) {
+        stitchListeners.add(listener);
+    }
+
     @SubscribeEvent
     public void textureLoad(TextureStitchEvent.Pre event) {
         for (IIconSelfRegister reg : iconRegistrars)
             if (reg.atlasIndex() == event.map.getTextureType()) reg.registerIcons(event.map);
     }
 
+    @SubscribeEvent
+    public void textureStitched(TextureStitchEvent.Post event) {
+        for (IStitchListener listener : stitchListeners) listener.textureStitched(event.map);
+    }
+
     /**
      * @return an array of ARGB pixel data
      */
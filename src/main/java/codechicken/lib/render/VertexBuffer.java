@@ -0,0 +1,144 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+
+/**
+ * An in-memory, growable VertexSink. Records the position, uv and the current normal, colour and brightness of every
+ * vertex so the buffer can be inspected directly, appended to other buffers or replayed into another sink such as the
+ * Tessellator. Not thread safe, each thread should write to its own buffer.
+ */
+public class VertexBuffer implements VertexSink {
+
+    public static final int FLAG_NORMAL = 1;
+    public static final int FLAG_COLOUR = 2;
+    public static final int FLAG_BRIGHTNESS = 4;
+
+    /**
+     * x, y, z, u, v for each vertex
+     */
+    public double[] vertices;
+    /**
+     * Normal x, y, z for each vertex
+     */
+    public float[] normals;
+    /**
+     * RGBA colour for each vertex, r in the high byte
+     */
+    public int[] colours;
+    public int[] brightness;
+    /**
+     * Which of normal, colour and brightness had been set when each vertex was added
+     */
+    public int[] flags;
+    private int vertexCount;
+
+    private int flag;
+    private float nx, ny, nz;
+    private int colour;
+    private int bright;
+
+    public VertexBuffer() {
+        this(64);
+    }
+
+    public VertexBuffer(int capacity) {
+        allocate(Math.max(capacity, 4));
+    }
+
+    private void allocate(int capacity) {
+        vertices = vertices == null ? new double[capacity * 5] : Arrays.copyOf(vertices, capacity * 5);
+        normals = normals == null ? new float[capacity * 3] : Arrays.copyOf(normals, capacity * 3);
+        colours = colours == null ? new int[capacity] : Arrays.copyOf(colours, capacity);
+        brightness = brightness == null ? new int[capacity] : Arrays.copyOf(brightness, capacity);
+        flags = flags == null ? new int[capacity] : Arrays.copyOf(flags, capacity);
+    }
+
+    private void ensureCapacity(int count) {
+        int capacity = flags.length;
+        if (count > capacity) allocate(Math.max(count, capacity * 2));
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Clears all vertices and the current normal, colour and brightness
+     */
+    public VertexBuffer reset() {
+        vertexCount = 0;
+        flag = 0;
+        return this;
+    }
+
+    @Override
+    public void setNormal(float x, float y, float z) {
+        nx = x;
+        ny = y;
+        nz = z;
+        flag |= FLAG_NORMAL;
+    }
+
+    @Override
+    public void setColour(int r, int g, int b, int a) {
+        colour = (r & 0xFF) << 24 | (g & 0xFF) << 16 | (b & 0xFF) << 8 | a & 0xFF;
+        flag |= FLAG_COLOUR;
+    }
+
+    @Override
+    public void setBrightness(int brightness) {
+        bright = brightness;
+        flag |= FLAG_BRIGHTNESS;
+    }
+
+    @Override
+    public void addVertex(double x, double y, double z, double u, double v) {
+        ensureCapacity(vertexCount + 1);
+        int i = vertexCount++;
+        int p = i * 5;
+        vertices[p] = x;
+        vertices[p + 1] = y;
+        vertices[p + 2] = z;
+        vertices[p + 3] = u;
+        vertices[p + 4] = v;
+        int n = i * 3;
+        normals[n] = nx;
+        normals[n + 1] = ny;
+        normals[n + 2] = nz;
+        colours[i] = colour;
+        brightness[i] = bright;
+        flags[i] = flag;
+    }
+
+    /**
+     * Appends all vertices in buffer to this one
+     */
+    public VertexBuffer append(VertexBuffer buffer) {
+        int count = buffer.vertexCount;
+        ensureCapacity(vertexCount + count);
+        System.arraycopy(buffer.vertices, 0, vertices, vertexCount * 5, count * 5);
+        System.arraycopy(buffer.normals, 0, normals, vertexCount * 3, count * 3);
+        System.arraycopy(buffer.colours, 0, colours, vertexCount, count);
+        System.arraycopy(buffer.brightness, 0, brightness, vertexCount, count);
+        System.arraycopy(buffer.flags, 0, flags, vertexCount, count);
+        vertexCount += count;
+        return this;
+    }
+
+    /**
+     * Writes all vertices in this buffer to sink
+     */
+    public void replay(VertexSink sink) {
+        for (int i = 0; i < vertexCount; i++) {
+            int f = flags[i];
+            if ((f & FLAG_NORMAL) != 0) sink.setNormal(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+            if ((f & FLAG_COLOUR) != 0) {
+                int c = colours[i];
+                sink.setColour(c >>> 24, c >> 16 & 0xFF, c >> 8 & 0xFF, c & 0xFF);
+            }
+            if ((f & FLAG_BRIGHTNESS) != 0) sink.setBrightness(brightness[i]);
+            int p = i * 5;
+            sink.addVertex(vertices[p], vertices[p + 1], vertices[p + 2], vertices[p + 3], vertices[p + 4]);
+        }
+    }
+}
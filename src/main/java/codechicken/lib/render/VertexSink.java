@@ -0,0 +1,26 @@
+package codechicken.lib.render;
+
+/**
+ * A destination for vertices emitted by CCRenderState. Mirrors the subset of the Tessellator used by the render
+ * pipeline, normal, colour and brightness apply to all following vertices until changed.
+ */
+public interface VertexSink {
+
+    /**
+     * Begin a new batch of primitives, mode is a GL primitive type such as GL_QUADS
+     */
+    default void startDrawing(int mode) {}
+
+    /**
+     * Finish the current batch, drawing or flushing it if applicable
+     */
+    default void draw() {}
+
+    void setNormal(float x, float y, float z);
+
+    void setColour(int r, int g, int b, int a);
+
+    void setBrightness(int brightness);
+
+    void addVertex(double x, double y, double z, double u, double v);
+}
@@ -3,7 +3,7 @@ package codechicken.lib.vec;
 public class AxisCycle {
 
     public static Transformation[] cycles = new Transformation[] { new RedundantTransformation(),
-            new VariableTransformation(new Matrix4(0, 0, 1, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 1)) {
+            new PermutationTransformation(new Matrix4(0, 0, 1, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -19,7 +19,7 @@ public class AxisCycle {
                 public Transformation inverse() {
                     return cycles[2];
                 }
-            }, new VariableTransformation(new Matrix4(0, 1, 0, 0, 0, 0, 1, 0, 1, 0, 0, 0, 0, 0, 0, 1)) {
+            }, new PermutationTransformation(new Matrix4(0, 1, 0, 0, 0, 0, 1, 0, 1, 0, 0, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
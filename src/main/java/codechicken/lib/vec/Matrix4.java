@@ -328,6 +328,55 @@ public class Matrix4 extends Transformation implements Copyable<Matrix4> {
         vec.normalize();
     }
 
+    @Override
+    public void apply(double[] xyz, int offset, int count) {
+        double a00 = m00, a01 = m01, a02 = m02, a03 = m03;
+        double a10 = m10, a11 = m11, a12 = m12, a13 = m13;
+        double a20 = m20, a21 = m21, a22 = m22, a23 = m23;
+        int end = (offset + count) * 3;
+        for (int i = offset * 3; i < end; i += 3) {
+            double x = xyz[i], y = xyz[i + 1], z = xyz[i + 2];
+            xyz[i] = a00 * x + a01 * y + a02 * z + a03;
+            xyz[i + 1] = a10 * x + a11 * y + a12 * z + a13;
+            xyz[i + 2] = a20 * x + a21 * y + a22 * z + a23;
+        }
+    }
+
+    /**
+     * Multiplies count packed vectors by the upper 3x3 of this matrix without normalizing
+     */
+    public void mult3x3(float[] xyz, int offset, int count) {
+        double a00 = m00, a01 = m01, a02 = m02;
+        double a10 = m10, a11 = m11, a12 = m12;
+        double a20 = m20, a21 = m21, a22 = m22;
+        int end = (offset + count) * 3;
+        for (int i = offset * 3; i < end; i += 3) {
+            double x = xyz[i], y = xyz[i + 1], z = xyz[i + 2];
+            xyz[i] = (float) (a00 * x + a01 * y + a02 * z);
+            xyz[i + 1] = (float) (a10 * x + a11 * y + a12 * z);
+            xyz[i + 2] = (float) (a20 * x + a21 * y + a22 * z);
+        }
+    }
+
+    @Override
+    public void applyN(float[] xyz, int offset, int count) {
+        double a00 = m00, a01 = m01, a02 = m02;
+        double a10 = m10, a11 = m11, a12 = m12;
+        double a20 = m20, a21 = m21, a22 = m22;
+        int end = (offset + count) * 3;
+        for (int i = offset * 3; i < end; i += 3) {
+            double x = xyz[i], y = xyz[i + 1], z = xyz[i + 2];
+            double nx = a00 * x + a01 * y + a02 * z;
+            double ny = a10 * x + a11 * y + a12 * z;
+            double nz = a20 * x + a21 * y + a22 * z;
+            double d = nx * nx + ny * ny + nz * nz;
+            if (d != 0) d = 1 / Math.sqrt(d);
+            xyz[i] = (float) (nx * d);
+            xyz[i + 1] = (float) (ny * d);
+            xyz[i + 2] = (float) (nz * d);
+        }
+    }
+
     @Override
     public String toString() {
         MathContext cont = new MathContext(4, RoundingMode.HALF_UP);
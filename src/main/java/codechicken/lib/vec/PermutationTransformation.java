@@ -0,0 +1,23 @@
+package codechicken.lib.vec;
+
+/**
+ * A VariableTransformation with a fixed axis permutation matrix, such as {@link SwapYZ} and the quarter turns in
+ * {@link Rotation} and {@link AxisCycle}. As mat is known to match {@link #apply(Vector3)}, bulk transforms multiply
+ * by it directly rather than calling apply per vector.
+ */
+abstract class PermutationTransformation extends VariableTransformation {
+
+    public PermutationTransformation(Matrix4 mat) {
+        super(mat);
+    }
+
+    @Override
+    public void apply(double[] xyz, int offset, int count) {
+        mat.apply(xyz, offset, count);
+    }
+
+    @Override
+    public void applyN(float[] xyz, int offset, int count) {
+        mat.mult3x3(xyz, offset, count);
+    }
+}
@@ -14,6 +14,12 @@ public class RedundantTransformation extends Transformation {
     @Override
     public void applyN(Vector3 normal) {}
 
+    @Override
+    public void apply(double[] xyz, int offset, int count) {}
+
+    @Override
+    public void applyN(float[] xyz, int offset, int count) {}
+
     @Override
     public Transformation at(Vector3 point) {
         return this;
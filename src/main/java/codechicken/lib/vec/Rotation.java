@@ -19,7 +19,7 @@ public class Rotation extends Transformation {
      * Clockwise pi/2 about y looking down
      */
     public static Transformation[] quarterRotations = new Transformation[] { new RedundantTransformation(),
-            new VariableTransformation(new Matrix4(0, 0, -1, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0, 1)) {
+            new PermutationTransformation(new Matrix4(0, 0, -1, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -33,7 +33,7 @@ public class Rotation extends Transformation {
                 public Transformation inverse() {
                     return quarterRotations[3];
                 }
-            }, new VariableTransformation(new Matrix4(-1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1)) {
+            }, new PermutationTransformation(new Matrix4(-1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -45,7 +45,7 @@ public class Rotation extends Transformation {
                 public Transformation inverse() {
                     return this;
                 }
-            }, new VariableTransformation(new Matrix4(0, 0, 1, 0, 0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 0, 1)) {
+            }, new PermutationTransformation(new Matrix4(0, 0, 1, 0, 0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -62,7 +62,7 @@ public class Rotation extends Transformation {
             } };
 
     public static Transformation[] sideRotations = new Transformation[] { new RedundantTransformation(),
-            new VariableTransformation(new Matrix4(1, 0, 0, 0, 0, -1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1)) {
+            new PermutationTransformation(new Matrix4(1, 0, 0, 0, 0, -1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -74,7 +74,7 @@ public class Rotation extends Transformation {
                 public Transformation inverse() {
                     return this;
                 }
-            }, new VariableTransformation(new Matrix4(1, 0, 0, 0, 0, 0, -1, 0, 0, 1, 0, 0, 0, 0, 0, 1)) {
+            }, new PermutationTransformation(new Matrix4(1, 0, 0, 0, 0, 0, -1, 0, 0, 1, 0, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -88,7 +88,7 @@ public class Rotation extends Transformation {
                 public Transformation inverse() {
                     return sideRotations[3];
                 }
-            }, new VariableTransformation(new Matrix4(1, 0, 0, 0, 0, 0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 1)) {
+            }, new PermutationTransformation(new Matrix4(1, 0, 0, 0, 0, 0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -102,7 +102,7 @@ public class Rotation extends Transformation {
                 public Transformation inverse() {
                     return sideRotations[2];
                 }
-            }, new VariableTransformation(new Matrix4(0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1)) {
+            }, new PermutationTransformation(new Matrix4(0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -116,7 +116,7 @@ public class Rotation extends Transformation {
                 public Transformation inverse() {
                     return sideRotations[5];
                 }
-            }, new VariableTransformation(new Matrix4(0, -1, 0, 0, 1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1)) {
+            }, new PermutationTransformation(new Matrix4(0, -1, 0, 0, 1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1)) {
 
                 @Override
                 public void apply(Vector3 vec) {
@@ -207,7 +207,9 @@ public class Rotation extends Transformation {
     public double angle;
     public Vector3 axis;
 
-    private Quat quat;
+    // built on first use and published whole, so a rotation may be shared between threads
+    private volatile Quat quat;
+    private volatile Matrix4 mat;
 
     public Rotation(double angle, Vector3 axis) {
         this.angle = angle;
@@ -247,11 +249,60 @@ public class Rotation extends Transformation {
         mat.rotate(angle, axis);
     }
 
+    @Override
+    public void apply(double[] xyz, int offset, int count) {
+        toMatrix().apply(xyz, offset, count);
+    }
+
+    @Override
+    public void applyN(float[] xyz, int offset, int count) {
+        toMatrix().mult3x3(xyz, offset, count);
+    }
+
     public Quat toQuat() {
         if (quat == null) quat = Quat.aroundAxis(axis, angle);
         return quat;
     }
 
+    /**
+     * @return True if this is a multiple of pi/2 about one of the coordinate axes
+     */
+    public boolean isQuarterTurn() {
+        double q = angle / MathHelper.pi * 2;
+        return axis.isAxial() && MathHelper.between(1 - 1E-5, axis.magSquared(), 1 + 1E-5)
+                && MathHelper.between(-1E-5, q - Math.round(q), 1E-5);
+    }
+
+    /**
+     * @return A matrix equivalent to this rotation, used for bulk transforms. Quarter turns are snapped to an exact
+     *         signed axis permutation.
+     */
+    public Matrix4 toMatrix() {
+        if (mat == null) {
+            Quat q = toQuat();
+            Vector3 x = new Vector3(1, 0, 0);
+            Vector3 y = new Vector3(0, 1, 0);
+            Vector3 z = new Vector3(0, 0, 1);
+            q.rotate(x);
+            q.rotate(y);
+            q.rotate(z);
+            Matrix4 m = new Matrix4(x.x, y.x, z.x, 0, x.y, y.y, z.y, 0, x.z, y.z, z.z, 0, 0, 0, 0, 1);
+            if (isQuarterTurn()) {
+                m.m00 = Math.round(m.m00);
+                m.m01 = Math.round(m.m01);
+                m.m02 = Math.round(m.m02);
+                m.m10 = Math.round(m.m10);
+                m.m11 = Math.round(m.m11);
+                m.m12 = Math.round(m.m12);
+                m.m20 = Math.round(m.m20);
+                m.m21 = Math.round(m.m21);
+                m.m22 = Math.round(m.m22);
+            }
+            mat = m;
+        }
+        return mat;
+    }
+
     @Override
     @SideOnly(Side.CLIENT)
     public void glApply() {
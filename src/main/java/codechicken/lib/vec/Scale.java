@@ -33,6 +33,20 @@ public class Scale extends Transformation {
     @Override
     public void applyN(Vector3 normal) {}
 
+    @Override
+    public void apply(double[] xyz, int offset, int count) {
+        double x = factor.x, y = factor.y, z = factor.z;
+        int end = (offset + count) * 3;
+        for (int i = offset * 3; i < end; i += 3) {
+            xyz[i] *= x;
+            xyz[i + 1] *= y;
+            xyz[i + 2] *= z;
+        }
+    }
+
+    @Override
+    public void applyN(float[] xyz, int offset, int count) {}
+
     @Override
     public void apply(Matrix4 mat) {
         mat.scale(factor);
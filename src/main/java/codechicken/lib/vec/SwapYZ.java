@@ -1,6 +1,6 @@
 package codechicken.lib.vec;
 
-public class SwapYZ extends VariableTransformation {
+public class SwapYZ extends PermutationTransformation {
 
     public SwapYZ() {
         super(new Matrix4(1, 0, 0, 0, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 0, 1));
@@ -26,6 +26,41 @@ public abstract class Transformation extends ITransformation<Vector3, Transforma
      */
     public abstract void apply(Matrix4 mat);
 
+    /**
+     * Applies this transformation to count packed xyz coordinates in place, starting at vector index offset.
+     * Subclasses override this with a tight loop over the array to avoid a virtual call and Vector3 per vertex.
+     *
+     * @param xyz The coordinate array, 3 doubles per vector
+     */
+    public void apply(double[] xyz, int offset, int count) {
+        Vector3 vec = new Vector3();
+        int end = (offset + count) * 3;
+        for (int i = offset * 3; i < end; i += 3) {
+            vec.set(xyz[i], xyz[i + 1], xyz[i + 2]);
+            apply(vec);
+            xyz[i] = vec.x;
+            xyz[i + 1] = vec.y;
+            xyz[i + 2] = vec.z;
+        }
+    }
+
+    /**
+     * Applies this transformation to count packed xyz normals in place, starting at vector index offset.
+     *
+     * @param xyz The normal array, 3 floats per vector
+     */
+    public void applyN(float[] xyz, int offset, int count) {
+        Vector3 vec = new Vector3();
+        int end = (offset + count) * 3;
+        for (int i = offset * 3; i < end; i += 3) {
+            vec.set(xyz[i], xyz[i + 1], xyz[i + 2]);
+            applyN(vec);
+            xyz[i] = (float) vec.x;
+            xyz[i + 1] = (float) vec.y;
+            xyz[i + 2] = (float) vec.z;
+        }
+    }
+
     public Transformation at(Vector3 point) {
         return new TransformationList(new Translation(-point.x, -point.y, -point.z), this, point.translation());
     }
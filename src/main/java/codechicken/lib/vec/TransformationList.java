@@ -8,8 +8,13 @@ import cpw.mods.fml.relauncher.SideOnly;
 
 public class TransformationList extends Transformation {
 
+    private static final SwapYZ swapYZ = new SwapYZ();
+
     private ArrayList<Transformation> transformations = new ArrayList<Transformation>();
-    private Matrix4 mat;
+    /**
+     * Built whole before it is assigned, so a list which isn't modified may be applied from several threads
+     */
+    private volatile Matrix4 mat;
 
     public TransformationList(Transformation... transforms) {
         for (Transformation t : transforms)
@@ -20,13 +25,104 @@ public class TransformationList extends Transformation {
     }
 
     public Matrix4 compile() {
+        Matrix4 mat = this.mat;
         if (mat == null) {
             mat = new Matrix4();
             for (int i = transformations.size() - 1; i >= 0; i--) transformations.get(i).apply(mat);
+            this.mat = mat;
+        }
+        return mat;
+    }
+
+    /**
+     * Folds this list into the cheapest single transformation with the same effect. Redundant, translation and scale
+     * only lists become a single {@link Translation} or {@link Scale}, quarter turns that reduce to one of the fixed
+     * axis permutations in {@link Rotation}, {@link AxisCycle} or {@link SwapYZ} become that transformation, and
+     * anything else is compiled to a Matrix4. Lists containing other transformations (whose matrix may not match how
+     * they transform vectors) are not folded, and this list is returned.
+     * <p>
+     * The result is a snapshot of the list, later changes to the list or its transformations are not reflected in it.
+     * Fixed permutations and single elements are returned as is (not copied) so must not be modified.
+     */
+    public Transformation simplify() {
+        if (!foldable()) return this;
+        if (transformations.isEmpty()) return new RedundantTransformation();
+        if (transformations.size() == 1) return transformations.get(0);
+        return simplify(quarterCompile());
+    }
+
+    /**
+     * @return True if every transformation is of a type whose matrix is known to match how it transforms vectors
+     */
+    private boolean foldable() {
+        for (Transformation t : transformations) {
+            Class<?> c = t.getClass();
+            if (c != Translation.class && c != Scale.class
+                    && c != Rotation.class
+                    && c != SwapYZ.class
+                    && c != Matrix4.class
+                    && c != RedundantTransformation.class
+                    && !isFixedPermutation(t))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isFixedPermutation(Transformation t) {
+        for (Transformation p : Rotation.quarterRotations) if (t == p) return true;
+        for (Transformation p : Rotation.sideRotations) if (t == p) return true;
+        for (Transformation p : AxisCycle.cycles) if (t == p) return true;
+        return false;
+    }
+
+    /**
+     * Like compile, but with quarter turn rotations contributing their exact permutation matrix
+     */
+    private Matrix4 quarterCompile() {
+        Matrix4 mat = new Matrix4();
+        for (int i = transformations.size() - 1; i >= 0; i--) {
+            Transformation t = transformations.get(i);
+            if (t instanceof Rotation && ((Rotation) t).isQuarterTurn()) mat.multiply(((Rotation) t).toMatrix());
+            else t.apply(mat);
         }
         return mat;
     }
 
+    private static Transformation simplify(Matrix4 m) {
+        if (m.m30 != 0 || m.m31 != 0 || m.m32 != 0 || m.m33 != 1) return m;
+
+        boolean translated = m.m03 != 0 || m.m13 != 0 || m.m23 != 0;
+        if (m.m01 == 0 && m.m02 == 0 && m.m10 == 0 && m.m12 == 0 && m.m20 == 0 && m.m21 == 0) {
+            boolean scaled = m.m00 != 1 || m.m11 != 1 || m.m22 != 1;
+            if (!scaled) return translated ? new Translation(m.m03, m.m13, m.m23) : new RedundantTransformation();
+            if (!translated) return new Scale(m.m00, m.m11, m.m22);
+        }
+
+        if (!translated) {
+            for (int i = 1; i < Rotation.quarterRotations.length; i++)
+                if (linearEquals(m, Rotation.quarterRotations[i])) return Rotation.quarterRotations[i];
+            for (int i = 1; i < Rotation.sideRotations.length; i++)
+                if (linearEquals(m, Rotation.sideRotations[i])) return Rotation.sideRotations[i];
+            for (int i = 1; i < AxisCycle.cycles.length; i++)
+                if (linearEquals(m, AxisCycle.cycles[i])) return AxisCycle.cycles[i];
+            if (linearEquals(m, swapYZ)) return swapYZ;
+        }
+
+        return m;
+    }
+
+    private static boolean linearEquals(Matrix4 m, Transformation t) {
+        Matrix4 p = ((VariableTransformation) t).mat;
+        return m.m00 == p.m00 && m.m01 == p.m01
+                && m.m02 == p.m02
+                && m.m10 == p.m10
+                && m.m11 == p.m11
+                && m.m12 == p.m12
+                && m.m20 == p.m20
+                && m.m21 == p.m21
+                && m.m22 == p.m22;
+    }
+
     /**
      * Returns a global space matrix as opposed to an object space matrix (reverse application order)
      * 
@@ -50,6 +146,18 @@ public class TransformationList extends Transformation {
         else for (int i = 0; i < transformations.size(); i++) transformations.get(i).applyN(normal);
     }
 
+    @Override
+    public void apply(double[] xyz, int offset, int count) {
+        if (mat != null) mat.apply(xyz, offset, count);
+        else for (int i = 0; i < transformations.size(); i++) transformations.get(i).apply(xyz, offset, count);
+    }
+
+    @Override
+    public void applyN(float[] xyz, int offset, int count) {
+        if (mat != null) mat.applyN(xyz, offset, count);
+        else for (int i = 0; i < transformations.size(); i++) transformations.get(i).applyN(xyz, offset, count);
+    }
+
     @Override
     public void apply(Matrix4 mat) {
         mat.multiply(compile());
@@ -0,0 +1,102 @@
+package codechicken.lib.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.world.ChunkCoordIntPair;
+import net.minecraft.world.World;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.world.ChunkWatchEvent;
+import net.minecraftforge.event.world.WorldEvent;
+
+import cpw.mods.fml.common.FMLCommonHandler;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.PlayerEvent;
+
+/**
+ * Maintains, for each server world, the players watching each chunk from the Forge ChunkWatchEvents. A player watches a
+ * chunk from when its data is sent to them until it is removed from their view, matching
+ * {@link net.minecraft.server.management.PlayerManager#isPlayerWatchingChunk}. Used by PacketCustom.sendToChunk so
+ * sending to a chunk doesn't have to check every player online.
+ * <p>
+ * Must be initialised before any players join, CodeChickenCore does this during init.
+ */
+public class ChunkWatchIndex {
+
+    private static boolean init;
+    private static final HashMap<World, HashMap<ChunkCoordIntPair, ArrayList<EntityPlayerMP>>> worlds = new HashMap<>();
+
+    public static void init() {
+        if (init) return;
+        init = true;
+
+        ChunkWatchIndex index = new ChunkWatchIndex();
+        MinecraftForge.EVENT_BUS.register(index);
+        FMLCommonHandler.instance().bus().register(index);
+    }
+
+    public static boolean isInitialised() {
+        return init;
+    }
+
+    /**
+     * @return The players watching the chunk. The returned list must not be modified
+     */
+    public static List<EntityPlayerMP> getWatchers(World world, int chunkX, int chunkZ) {
+        HashMap<ChunkCoordIntPair, ArrayList<EntityPlayerMP>> chunks = worlds.get(world);
+        if (chunks == null) return Collections.emptyList();
+
+        ArrayList<EntityPlayerMP> players = chunks.get(new ChunkCoordIntPair(chunkX, chunkZ));
+        return players == null ? Collections.<EntityPlayerMP>emptyList() : players;
+    }
+
+    @SubscribeEvent
+    public void onChunkWatch(ChunkWatchEvent.Watch event) {
+        HashMap<ChunkCoordIntPair, ArrayList<EntityPlayerMP>> chunks = worlds.get(event.player.worldObj);
+        if (chunks == null) worlds.put(event.player.worldObj, chunks = new HashMap<>());
+
+        ArrayList<EntityPlayerMP> players = chunks.get(event.chunk);
+        if (players == null) chunks.put(event.chunk, players = new ArrayList<>(2));
+        if (!players.contains(event.player)) players.add(event.player);
+    }
+
+    @SubscribeEvent
+    public void onChunkUnWatch(ChunkWatchEvent.UnWatch event) {
+        // the player may have already changed world when leaving a dimension
+        if (!remove(worlds.get(event.player.worldObj), event.chunk, event.player))
+            for (HashMap<ChunkCoordIntPair, ArrayList<EntityPlayerMP>> chunks : worlds.values())
+                if (remove(chunks, event.chunk, event.player)) break;
+    }
+
+    private static boolean remove(HashMap<ChunkCoordIntPair, ArrayList<EntityPlayerMP>> chunks,
+            ChunkCoordIntPair chunk, EntityPlayerMP player) {
+        if (chunks == null) return false;
+
+        ArrayList<EntityPlayerMP> players = chunks.get(chunk);
+        if (players == null || !players.remove(player)) return false;
+
+        if (players.isEmpty()) chunks.remove(chunk);
+        return true;
+    }
+
+    @SubscribeEvent
+    public void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        for (HashMap<ChunkCoordIntPair, ArrayList<EntityPlayerMP>> chunks : worlds.values()) {
+            Iterator<Map.Entry<ChunkCoordIntPair, ArrayList<EntityPlayerMP>>> it = chunks.entrySet().iterator();
+            while (it.hasNext()) {
+                ArrayList<EntityPlayerMP> players = it.next().getValue();
+                if (players.remove(event.player) && players.isEmpty()) it.remove();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        worlds.remove(event.world);
+    }
+}
@@ -0,0 +1,168 @@
+package codechicken.lib.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagByte;
+import net.minecraft.nbt.NBTTagByteArray;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagDouble;
+import net.minecraft.nbt.NBTTagInt;
+import net.minecraft.nbt.NBTTagIntArray;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagLong;
+import net.minecraft.nbt.NBTTagString;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.packet.PacketCustom;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Round trips random NBT trees through a writer and reader dictionary, checking the reader reconstructs every compound
+ * and that all encodings (including deltas with removed keys and references across the ring wrapping) are exercised.
+ */
+public class NBTDeltaDictionaryTest {
+
+    private static final String[] KEYS = { "id", "Damage", "display", "ench", "energy", "owner", "mode", "items" };
+
+    private static NBTBase randomTag(Random rand, int depth) {
+        switch (rand.nextInt(depth > 2 ? 7 : 9)) {
+            case 0:
+                return new NBTTagByte((byte) rand.nextInt());
+            case 1:
+                // small ranges, so equal values recur and deltas share keys
+                return new NBTTagInt(rand.nextInt(8));
+            case 2:
+                return new NBTTagLong(rand.nextLong());
+            case 3:
+                return new NBTTagDouble(rand.nextInt(4) / 2D);
+            case 4:
+                return new NBTTagString("s" + rand.nextInt(16));
+            case 5: {
+                byte[] bytes = new byte[rand.nextInt(9)];
+                rand.nextBytes(bytes);
+                return new NBTTagByteArray(bytes);
+            }
+            case 6: {
+                int[] ints = new int[rand.nextInt(9)];
+                for (int i = 0; i < ints.length; i++) ints[i] = rand.nextInt();
+                return new NBTTagIntArray(ints);
+            }
+            case 7: {
+                NBTTagList list = new NBTTagList();
+                for (int n = rand.nextInt(4); n > 0; n--) list.appendTag(new NBTTagString("l" + rand.nextInt(4)));
+                return list;
+            }
+            default:
+                return randomCompound(rand, depth + 1);
+        }
+    }
+
+    private static NBTTagCompound randomCompound(Random rand, int depth) {
+        NBTTagCompound tag = new NBTTagCompound();
+        for (int n = rand.nextInt(KEYS.length) + 1; n > 0; n--)
+            tag.setTag(KEYS[rand.nextInt(KEYS.length)], randomTag(rand, depth));
+        return tag;
+    }
+
+    /**
+     * @return A copy of base with one key changed, added or removed
+     */
+    private static NBTTagCompound mutate(Random rand, NBTTagCompound base) {
+        NBTTagCompound tag = (NBTTagCompound) base.copy();
+        String key = KEYS[rand.nextInt(KEYS.length)];
+        if (rand.nextBoolean() && tag.hasKey(key)) tag.removeTag(key);
+        else tag.setTag(key, randomTag(rand, 1));
+        return tag;
+    }
+
+    private static PacketCustom reader(PacketCustom writer) {
+        return new PacketCustom(writer.getByteBuf().copy());
+    }
+
+    @Test
+    public void fuzzRoundTrip() {
+        for (long seed = 0; seed < 20; seed++) {
+            Random rand = new Random(seed);
+            NBTDeltaDictionary writeDict = new NBTDeltaDictionary();
+            NBTDeltaDictionary readDict = new NBTDeltaDictionary();
+            PacketCustom out = new PacketCustom("cctest", 1, false);
+            ByteBuf buf = out.getByteBuf();
+
+            List<NBTTagCompound> sent = new ArrayList<>();
+            int[] modes = new int[4];
+            int removals = 0;
+            for (int i = 0; i < 1000; i++) {
+                NBTTagCompound tag;
+                int r = rand.nextInt(20);
+                if (r == 0) tag = null;
+                else if (sent.isEmpty() || r < 6) tag = randomCompound(rand, 0);
+                else {
+                    // mostly recent compounds, sometimes ones already pushed out of the ring
+                    NBTTagCompound base = sent.get(Math.max(0, sent.size() - 1 - rand.nextInt(48)));
+                    if (base == null) tag = randomCompound(rand, 0);
+                    else tag = r < 12 ? (NBTTagCompound) base.copy() : mutate(rand, base);
+                }
+
+                int pos = buf.writerIndex();
+                out.writeNBTTagCompound(tag, writeDict);
+                int mode = buf.getByte(pos);
+                modes[mode]++;
+                // mode, ring index and removed key count are each a single byte varint
+                if (mode == NBTDeltaDictionary.DELTA && buf.getByte(pos + 2) > 0) removals++;
+                sent.add(tag == null ? null : (NBTTagCompound) tag.copy());
+            }
+
+            PacketCustom in = reader(out);
+            for (int i = 0; i < sent.size(); i++)
+                assertEquals(sent.get(i), in.readNBTTagCompound(readDict), "seed " + seed + ", compound " + i);
+            assertEquals(0, in.getByteBuf().readableBytes());
+
+            assertTrue(modes[NBTDeltaDictionary.NULL] > 0);
+            assertTrue(modes[NBTDeltaDictionary.FULL] > 0);
+            assertTrue(modes[NBTDeltaDictionary.REFERENCE] > 0);
+            assertTrue(modes[NBTDeltaDictionary.DELTA] > 0);
+            assertTrue(removals > 0);
+        }
+    }
+
+    @Test
+    public void ringWrapsAround() {
+        NBTDeltaDictionary writeDict = new NBTDeltaDictionary();
+        NBTDeltaDictionary readDict = new NBTDeltaDictionary();
+        PacketCustom out = new PacketCustom("cctest", 1, false);
+        ByteBuf buf = out.getByteBuf();
+
+        // no shared keys, so every compound is sent in full and takes the next slot
+        List<NBTTagCompound> sent = new ArrayList<>();
+        for (int i = 0; i <= NBTDeltaDictionary.SIZE; i++) {
+            NBTTagCompound tag = new NBTTagCompound();
+            tag.setInteger("k" + i, i);
+            int pos = buf.writerIndex();
+            out.writeNBTTagCompound(tag, writeDict);
+            assertEquals(NBTDeltaDictionary.FULL, buf.getByte(pos));
+            sent.add(tag);
+        }
+
+        // the first compound was overwritten by the last, the second is still remembered until the first is resent
+        int[] resend = { NBTDeltaDictionary.SIZE, 1, 0 };
+        int[] expected = { NBTDeltaDictionary.REFERENCE, NBTDeltaDictionary.REFERENCE, NBTDeltaDictionary.FULL };
+        for (int i = 0; i < resend.length; i++) {
+            int pos = buf.writerIndex();
+            out.writeNBTTagCompound(sent.get(resend[i]), writeDict);
+            assertEquals(expected[i], buf.getByte(pos), "resend " + resend[i]);
+            sent.add(sent.get(resend[i]));
+        }
+
+        PacketCustom in = reader(out);
+        for (int i = 0; i < sent.size(); i++)
+            assertEquals(sent.get(i), in.readNBTTagCompound(readDict), "compound " + i);
+        assertEquals(0, in.getByteBuf().readableBytes());
+    }
+}